@@ -0,0 +1,186 @@
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shuffles the next boards ahead of time on a background thread, so a new game can be dealt
+ * straight away instead of shuffling a big board on the UI thread. A board is shuffled from a seed
+ * with GameBoard.shuffleColours, so a game dealt from it is the same as one started with
+ * GameEngine.newGame and that seed, and can still be journaled and replayed by its seed.
+ * Up to CAPACITY boards of the current dimensions are kept in a small array of slots, which a
+ * board is put into and taken out of atomically, so neither the UI thread nor the producer ever
+ * waits on a lock. Taking a board asks the producer to shuffle another. When the dimensions
+ * change the boards already shuffled are thrown away and boards of the new size are shuffled
+ */
+class BoardPreparer {
+
+    /**
+     * The most boards kept ready
+     */
+    static final int CAPACITY = 2;
+
+    /**
+     * A board shuffled ahead of time
+     */
+    static final class PreparedBoard {
+        private final int columns;
+        private final int rows;
+        private final long seed;
+        private final int[] colourIndices;
+
+        PreparedBoard(int columns, int rows, long seed, int[] colourIndices) {
+            this.columns = columns;
+            this.rows = rows;
+            this.seed = seed;
+            this.colourIndices = colourIndices;
+        }
+
+        /**
+         * Get the number of cards in each row of the board
+         * @return
+         * The number of columns
+         */
+        int getColumns() { return columns; }
+
+        /**
+         * Get the number of cards in each column of the board
+         * @return
+         * The number of rows
+         */
+        int getRows() { return rows; }
+
+        /**
+         * Get the seed the board was shuffled with
+         * @return
+         * The seed, as passed to GameEngine.newGame to deal the same board again
+         */
+        long getSeed() { return seed; }
+
+        /**
+         * Get the shuffled colour of each card, to pass to GameEngine.newGame
+         * @return
+         * The colour index of each card, indexed by row * columns + column
+         */
+        int[] getColourIndices() { return colourIndices; }
+    }
+
+    /**
+     * Shuffles the boards on one thread, which stops while there is nothing to shuffle
+     */
+    private final ThreadPoolExecutor producer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "BoardPreparer");
+            thread.setDaemon(true);
+            // Shuffling ahead of time must not compete with drawing frames
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final AtomicReferenceArray<PreparedBoard> slots = new AtomicReferenceArray<>(CAPACITY);
+
+    /**
+     * The dimensions boards are shuffled for, packed as columns << 16 | rows
+     */
+    private volatile int dimensions;
+
+    /**
+     * Only used on the producer thread
+     */
+    private final Random seedGenerator = new Random();
+    private final Random random = new Random();
+
+    private final Runnable fill = new Runnable() {
+        @Override
+        public void run() {
+            fillSlots();
+        }
+    };
+
+    /**
+     * Constructor. No boards are shuffled until the first call to prepare or take
+     */
+    BoardPreparer() {
+        producer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Start keeping boards of the given size ready, throwing away any boards of another size
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     */
+    void prepare(int columns, int rows) {
+        GameBoard.checkDimensions(columns, rows);
+        int newDimensions = columns << 16 | rows;
+        if (newDimensions == dimensions) return;
+        dimensions = newDimensions;
+        for (int i = 0; i < CAPACITY; i++) {
+            slots.set(i, null);
+        }
+        producer.execute(fill);
+    }
+
+    /**
+     * Take a board of the given size if one is ready, and start shuffling another to replace it
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @return
+     * The board, or null if no board of that size is ready and the game should be shuffled as
+     * usual. Boards of that size are prepared from now on
+     */
+    PreparedBoard take(int columns, int rows) {
+        prepare(columns, rows);
+        PreparedBoard board = null;
+        for (int i = 0; i < CAPACITY && board == null; i++) {
+            board = slots.getAndSet(i, null);
+            // A board shuffled for the old dimensions just as they changed
+            if (board != null && (board.columns != columns || board.rows != rows)) board = null;
+        }
+        producer.execute(fill);
+        return board;
+    }
+
+    /**
+     * Get the number of boards ready to be taken
+     * @return
+     * The number of boards, at most CAPACITY
+     */
+    int getReadyCount() {
+        int ready = 0;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (slots.get(i) != null) ready++;
+        }
+        return ready;
+    }
+
+    /**
+     * Shuffle boards into the slots that are empty or hold a board of old dimensions, on the
+     * producer thread. A board shuffled while the dimensions changed is dropped rather than put
+     * in a slot
+     */
+    private void fillSlots() {
+        for (int i = 0; i < CAPACITY; i++) {
+            int boardDimensions = dimensions;
+            int columns = boardDimensions >>> 16;
+            int rows = boardDimensions & 0xFFFF;
+            PreparedBoard existing = slots.get(i);
+            if (existing != null && existing.columns == columns && existing.rows == rows) continue;
+            long seed = seedGenerator.nextLong();
+            int[] colourIndices = new int[columns * rows];
+            random.setSeed(seed);
+            GameBoard.shuffleColours(colourIndices, GameBoard.getColourCount(columns, rows), random);
+
+            if (dimensions != boardDimensions) return;
+            slots.compareAndSet(i, existing, new PreparedBoard(columns, rows, seed, colourIndices));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * The part of the board that is on screen, for boards too big to show whole at a usable size. The
+ * board is laid out in its own coordinates, where it fits the view at a scale of 1, and the
+ * viewport scales it up around a focus point and scrolls it. The board always covers as much of
+ * the view as it can, so it cannot be scrolled off screen or zoomed out smaller than it fits.
+ * The viewport has no dependency on Android: the view turns it into a Matrix to draw with, and
+ * maps touches back to board coordinates with toBoardX and toBoardY
+ */
+class BoardViewport {
+
+    private int viewWidth;
+    private int viewHeight;
+    private int boardWidth;
+    private int boardHeight;
+    private float maxScale = 1;
+
+    private float scale = 1;
+    private float translateX;
+    private float translateY;
+
+    /**
+     * Set the size of the view and the board, showing the whole board again
+     * @param viewWidth
+     * The width of the view in pixels
+     * @param viewHeight
+     * The height of the view in pixels
+     * @param boardWidth
+     * The width of the board in board coordinates, at most viewWidth
+     * @param boardHeight
+     * The height of the board in board coordinates, at most viewHeight
+     * @param maxScale
+     * How far the board can be zoomed in, 1 to not allow zooming
+     */
+    void setSize(int viewWidth, int viewHeight, int boardWidth, int boardHeight, float maxScale) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.maxScale = Math.max(1, maxScale);
+        scale = 1;
+        translateX = 0;
+        translateY = 0;
+    }
+
+    /**
+     * Zoom in or out around a point that stays where it is on screen
+     * @param factor
+     * The change in scale, greater than 1 to zoom in. The scale is kept between 1 and the maximum
+     * @param focusX
+     * The x coordinate of the focus point in the view
+     * @param focusY
+     * The y coordinate of the focus point in the view
+     * @return
+     * True if the viewport changed, false otherwise
+     */
+    boolean zoom(float factor, float focusX, float focusY) {
+        float newScale = Math.max(1, Math.min(maxScale, scale * factor));
+        if (newScale == scale) return false;
+
+        float boardX = toBoardX(focusX);
+        float boardY = toBoardY(focusY);
+        scale = newScale;
+        translateX = focusX - boardX * scale;
+        translateY = focusY - boardY * scale;
+        clampTranslation();
+        return true;
+    }
+
+    /**
+     * Move the board across the view
+     * @param dx
+     * The distance to move the board to the right, in view pixels
+     * @param dy
+     * The distance to move the board down, in view pixels
+     * @return
+     * True if the viewport changed, false if the board was already at the edge
+     */
+    boolean scroll(float dx, float dy) {
+        float oldX = translateX;
+        float oldY = translateY;
+        translateX += dx;
+        translateY += dy;
+        clampTranslation();
+        return translateX != oldX || translateY != oldY;
+    }
+
+    /**
+     * Keep the board over the view. A board smaller than the view at the current scale stays at
+     * the view's top left, as it is drawn when the whole board is shown
+     */
+    private void clampTranslation() {
+        translateX = Math.max(Math.min(0, viewWidth - boardWidth * scale), Math.min(0, translateX));
+        translateY = Math.max(Math.min(0, viewHeight - boardHeight * scale), Math.min(0, translateY));
+    }
+
+    /**
+     * Is the board shown at the size it fits the view, with nothing scrolled
+     * @return
+     * True if board coordinates are view coordinates, false otherwise
+     */
+    boolean isIdentity() {
+        return scale == 1 && translateX == 0 && translateY == 0;
+    }
+
+    /**
+     * Can the board be zoomed in at all
+     * @return
+     * True if the maximum scale is greater than 1
+     */
+    boolean isZoomable() {
+        return maxScale > 1;
+    }
+
+    /**
+     * Get how far the board can be zoomed in
+     * @return
+     * The maximum scale, 1 if the board cannot be zoomed
+     */
+    float getMaxScale() {
+        return maxScale;
+    }
+
+    /**
+     * Map an x coordinate in the view to the board
+     * @param x
+     * The x coordinate in the view
+     * @return
+     * The x coordinate on the board
+     */
+    float toBoardX(float x) {
+        return (x - translateX) / scale;
+    }
+
+    /**
+     * Map a y coordinate in the view to the board
+     * @param y
+     * The y coordinate in the view
+     * @return
+     * The y coordinate on the board
+     */
+    float toBoardY(float y) {
+        return (y - translateY) / scale;
+    }
+
+    /**
+     * Map an x coordinate on the board to the view
+     * @param x
+     * The x coordinate on the board
+     * @return
+     * The x coordinate in the view
+     */
+    float toViewX(float x) {
+        return x * scale + translateX;
+    }
+
+    /**
+     * Map a y coordinate on the board to the view
+     * @param y
+     * The y coordinate on the board
+     * @return
+     * The y coordinate in the view
+     */
+    float toViewY(float y) {
+        return y * scale + translateY;
+    }
+
+    /**
+     * Get the scale the board is drawn at
+     * @return
+     * The scale, 1 when the whole board fits the view
+     */
+    float getScale() {
+        return scale;
+    }
+
+    /**
+     * Get how far the board has been scrolled horizontally
+     * @return
+     * The view x coordinate of the board's left edge, zero or less
+     */
+    float getTranslateX() {
+        return translateX;
+    }
+
+    /**
+     * Get how far the board has been scrolled vertically
+     * @return
+     * The view y coordinate of the board's top edge, zero or less
+     */
+    float getTranslateY() {
+        return translateY;
+    }
+}
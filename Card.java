@@ -1,39 +1,32 @@
-import android.graphics.Paint;
-import android.graphics.Rect;
-
 /**
- * Represents the concept of a card in the game. Holds a reference to the
- * rectangle that defines where on the canvas this card is located, and utility methods to flip
- * the card, check if the card has the same colour as another card
+ * Represents the concept of a card in the game. A card is a thin view onto one position of the
+ * GameBoard, which holds the actual state of every card and creates a view when one is asked for.
+ * Has utility methods to flip the card, check if the card has the same colour as another card
  */
 class Card {
 
-    private final Rect cardRect;
-    private Paint colour;
-    private boolean isFaceUp;
-    private boolean isMatched;
+    private final GameBoard gameBoard;
+    private final int index;
 
     /**
      * Constructor
-     * @param cardRect
-     * The Rectangle object containing the coordinates of where on the canvas this card is located
-     * @param colour
-     * The colour of the card
+     * @param gameBoard
+     * The game board holding the state of this card
+     * @param index
+     * The position of this card on the board, row * columns + column
      */
-    Card(Rect cardRect, Paint colour) {
-        this.cardRect = cardRect;
-        this.colour = colour;
-        isFaceUp = false;
-        isMatched = false;
+    Card(GameBoard gameBoard, int index) {
+        this.gameBoard = gameBoard;
+        this.index = index;
     }
 
     /**
-     * Gets the Rectangle associated with this card
+     * Gets the position of this card on the board
      * @return
-     * the Rectangle where this card is located.
+     * The position of this card, row * columns + column
      */
-    Rect getCardRect() {
-        return cardRect;
+    int getIndex() {
+        return index;
     }
 
     /**
@@ -42,32 +35,23 @@ class Card {
      * True if it face up, false otherwise
      */
     boolean isFaceUp() {
-        return isFaceUp;
+        return gameBoard.isFaceUp(index);
     }
 
     /**
-     * Get the current colour of this card
+     * Get the colour of this card
      * @return
-     * The current colour of this card
-     */
-    Paint getColour() {
-        return colour;
-    }
-
-    /**
-     * Set the colour of this card
-     * @param colour
-     * The colour the card will become
+     * The index of this card's colour in the CardPalette
      */
-    void setColour(Paint colour) {
-        this.colour = colour;
+    int getColourIndex() {
+        return gameBoard.getColourIndex(index);
     }
 
     /**
      * Turn a face down card up, or a face up card down
      */
     void flip() {
-        isFaceUp = !isFaceUp;
+        gameBoard.flip(index);
     }
 
     /**
@@ -76,7 +60,7 @@ class Card {
      * True is this card has already been matched, false otherwise
      */
     boolean isMatched() {
-        return isMatched;
+        return gameBoard.isMatched(index);
     }
 
     /**
@@ -85,17 +69,37 @@ class Card {
      * True is the card is to become matched, false otherwise
      */
     void setMatched(boolean isMatched) {
-        this.isMatched = isMatched;
+        gameBoard.setMatched(index, isMatched);
     }
 
     /**
-     * Determines if the current card object has the same integer colour number as another card object
+     * Determines if the current card object has the same colour index as another card object
      * @param card
      * The card to be compared to the current object
      * @return
      * True if the cards share a colour, false otherwise
      */
     boolean matches(Card card) {
-        return this != card && this.getColour().getColor() == card.getColour().getColor();
+        return !equals(card) && this.getColourIndex() == card.getColourIndex();
+    }
+
+    /**
+     * Two cards are equal if they are views of the same position on the same board, as the board
+     * creates a new view each time a card is asked for
+     * @param object
+     * The object to be compared to this card
+     * @return
+     * True if the object is a card at the same position of the same board, false otherwise
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Card)) return false;
+        Card card = (Card) object;
+        return gameBoard == card.gameBoard && index == card.index;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(gameBoard) * 31 + index;
     }
 }
@@ -0,0 +1,191 @@
+import android.view.Choreographer;
+
+/**
+ * Animates cards turning over and matched pairs fading away, driving every animation from a single
+ * Choreographer frame callback. Each card's progress is kept in a float array indexed by its
+ * position on the board, and the cards being animated are kept in a compact list, so each frame
+ * only visits and redraws the cards that are moving. The frame callback is only posted while at
+ * least one card is animating, so an idle board costs nothing per frame
+ */
+class CardAnimator implements Choreographer.FrameCallback {
+
+    /**
+     * Told which cards have moved on each frame, so only their tiles are redrawn
+     */
+    interface Listener {
+
+        /**
+         * A card's animation has advanced, or finished, and its tile needs to be redrawn
+         * @param cellIndex
+         * The position of the card on the board
+         */
+        void onCardAnimated(int cellIndex);
+    }
+
+    static final int NONE = 0;
+    static final int FLIP_UP = 1;
+    static final int FLIP_DOWN = 2;
+    static final int FADE_OUT = 3;
+
+    private static final long FLIP_DURATION_NANOS = 150 * 1000000L;
+    private static final long FADE_DURATION_NANOS = 250 * 1000000L;
+
+    private final Choreographer choreographer;
+    private final Listener listener;
+    private float[] progress = new float[0];
+    private byte[] animations = new byte[0];
+    private int[] activeCells = new int[0];
+    private int activeCount;
+    private boolean isTicking;
+    private long lastFrameTimeNanos;
+
+    /**
+     * Constructor
+     * @param choreographer
+     * The choreographer of the thread the cards are drawn on
+     * @param listener
+     * Told which cards to redraw on each frame
+     */
+    CardAnimator(Choreographer choreographer, Listener listener) {
+        this.choreographer = choreographer;
+        this.listener = listener;
+    }
+
+    /**
+     * Stop every animation, for example when a new game is started, and make room for a board
+     * with the given number of cards. The arrays are only reallocated if the board has grown
+     * @param cardCount
+     * The number of cards on the board
+     */
+    void reset(int cardCount) {
+        for (int i = 0; i < activeCount; i++) {
+            animations[activeCells[i]] = NONE;
+        }
+        activeCount = 0;
+        stopTicking();
+        if (progress.length < cardCount) {
+            progress = new float[cardCount];
+            animations = new byte[cardCount];
+            activeCells = new int[cardCount];
+        }
+    }
+
+    /**
+     * Start animating a card, replacing any animation it already has. A card turned back over
+     * while it is still turning up carries on from where it got to rather than jumping
+     * @param cellIndex
+     * The position of the card on the board
+     * @param animation
+     * FLIP_UP, FLIP_DOWN or FADE_OUT
+     */
+    void start(int cellIndex, int animation) {
+        int current = animations[cellIndex];
+        if (current == NONE) {
+            activeCells[activeCount++] = cellIndex;
+            progress[cellIndex] = 0;
+        } else if (current != animation && current != FADE_OUT && animation != FADE_OUT) {
+            progress[cellIndex] = 1 - progress[cellIndex];
+        } else {
+            progress[cellIndex] = 0;
+        }
+        animations[cellIndex] = (byte) animation;
+
+        if (!isTicking) {
+            isTicking = true;
+            lastFrameTimeNanos = 0;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Check if a card is being animated
+     * @param cellIndex
+     * The position of the card on the board
+     * @return
+     * True if the card is animating, in which case it should be drawn from its animation
+     */
+    boolean isAnimating(int cellIndex) {
+        return animations[cellIndex] != NONE;
+    }
+
+    /**
+     * Get the animation a card is playing
+     * @param cellIndex
+     * The position of the card on the board
+     * @return
+     * FLIP_UP, FLIP_DOWN, FADE_OUT or NONE
+     */
+    int getAnimation(int cellIndex) {
+        return animations[cellIndex];
+    }
+
+    /**
+     * Get how far through its animation a card is
+     * @param cellIndex
+     * The position of the card on the board
+     * @return
+     * The progress, from 0 at the start of the animation to 1 at its end
+     */
+    float getProgress(int cellIndex) {
+        return progress[cellIndex];
+    }
+
+    /**
+     * Get the number of cards being animated
+     * @return
+     * The number of cards, used with getActiveCell to visit each of them
+     */
+    int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * Get one of the cards being animated, in no particular order
+     * @param i
+     * From 0 to getActiveCount() - 1
+     * @return
+     * The position of the card on the board
+     */
+    int getActiveCell(int i) {
+        return activeCells[i];
+    }
+
+    /**
+     * Advance every animating card by the time since the last frame, redraw them and drop the
+     * cards whose animations have finished. Called by the Choreographer, on the thread the cards
+     * are drawn on, before the frame is drawn
+     * @param frameTimeNanos
+     * The time the frame started rendering, passed in by the Android Framework
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!isTicking) return;
+        long elapsedNanos = lastFrameTimeNanos == 0 ? 0 : frameTimeNanos - lastFrameTimeNanos;
+        lastFrameTimeNanos = frameTimeNanos;
+
+        for (int i = activeCount - 1; i >= 0; i--) {
+            int cellIndex = activeCells[i];
+            long durationNanos = animations[cellIndex] == FADE_OUT ? FADE_DURATION_NANOS : FLIP_DURATION_NANOS;
+            float cellProgress = progress[cellIndex] + (float) elapsedNanos / durationNanos;
+            if (cellProgress >= 1) {
+                animations[cellIndex] = NONE;
+                activeCells[i] = activeCells[--activeCount];
+            } else {
+                progress[cellIndex] = cellProgress;
+            }
+            listener.onCardAnimated(cellIndex);
+        }
+
+        if (activeCount > 0) {
+            choreographer.postFrameCallback(this);
+        } else {
+            isTicking = false;
+        }
+    }
+
+    private void stopTicking() {
+        if (!isTicking) return;
+        isTicking = false;
+        choreographer.removeFrameCallback(this);
+    }
+}
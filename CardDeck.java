@@ -0,0 +1,199 @@
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * A themed deck of card faces, such as icons or photos, packed into a single atlas image. The faces
+ * are laid out in a grid of equally sized cells, left to right and top to bottom, and the face at
+ * index i is shown by every card with colour index i. Keeping every face in one bitmap means a
+ * deck costs one decode and one texture upload, however many faces it has.
+ * Decks are decoded into an Atlas for a particular tile size, see DeckCache
+ */
+final class CardDeck {
+
+    /**
+     * A deck decoded for drawing. The atlas is downsampled as far as it can be while every face is
+     * still at least the size of a tile, so a deck drawn on small tiles takes a fraction of the
+     * memory of the full size image
+     */
+    static final class Atlas {
+
+        private final CardDeck deck;
+        private final Bitmap bitmap;
+        private final int sampleSize;
+        private final int faceWidth;
+        private final int faceHeight;
+
+        private Atlas(CardDeck deck, Bitmap bitmap, int sampleSize) {
+            this.deck = deck;
+            this.bitmap = bitmap;
+            this.sampleSize = sampleSize;
+            faceWidth = bitmap.getWidth() / deck.columns;
+            faceHeight = bitmap.getHeight() / deck.rows;
+        }
+
+        /**
+         * Check if this atlas has a face for a card
+         * @param colourIndex
+         * The colour index of the card
+         * @return
+         * True if the deck has a face for the colour, false if the card should be drawn in its
+         * flat colour instead
+         */
+        boolean hasFace(int colourIndex) {
+            return colourIndex < deck.faceCount;
+        }
+
+        /**
+         * Draw the face of a card, scaled to fill the given rectangle
+         * @param canvas
+         * The canvas to draw on
+         * @param colourIndex
+         * The colour index of the card, less than the deck's face count
+         * @param dst
+         * The rectangle the face is drawn in
+         * @param paint
+         * The paint to draw with, which should filter the bitmap. Its alpha fades the face
+         * @param src
+         * A rectangle to be set to the face's area of the atlas, so nothing is allocated
+         */
+        void drawFace(Canvas canvas, int colourIndex, Rect dst, Paint paint, Rect src) {
+            int left = (colourIndex % deck.columns) * faceWidth;
+            int top = (colourIndex / deck.columns) * faceHeight;
+            src.set(left, top, left + faceWidth, top + faceHeight);
+            canvas.drawBitmap(bitmap, src, dst, paint);
+        }
+
+        /**
+         * Check if this atlas can draw faces on tiles of a given size without being stretched. An
+         * atlas decoded at full size is as detailed as the deck gets
+         * @param tileSize
+         * The width and height of a tile in pixels
+         * @return
+         * True if every face is at least as large as a tile, or the atlas was not downsampled
+         */
+        boolean isDetailedEnough(int tileSize) {
+            return sampleSize == 1 || (faceWidth >= tileSize && faceHeight >= tileSize);
+        }
+
+        /**
+         * Get the deck this atlas was decoded from
+         * @return
+         * The deck
+         */
+        CardDeck getDeck() {
+            return deck;
+        }
+
+        /**
+         * Get how far the atlas was downsampled when it was decoded
+         * @return
+         * The power of two the atlas' width and height were divided by
+         */
+        int getSampleSize() {
+            return sampleSize;
+        }
+
+        /**
+         * Get the memory taken by the decoded atlas
+         * @return
+         * The size of the atlas bitmap in bytes
+         */
+        int getByteCount() {
+            return bitmap.getByteCount();
+        }
+    }
+
+    private final String name;
+    private final int resourceId;
+    private final int faceCount;
+    private final int columns;
+    private final int rows;
+
+    /**
+     * Constructor
+     * @param name
+     * The name of the deck's theme, unique among decks
+     * @param resourceId
+     * The drawable resource holding the atlas image
+     * @param faceCount
+     * The number of faces in the atlas. Cards whose colour index has no face are drawn in their
+     * flat colour
+     * @param columns
+     * The number of faces in each row of the atlas
+     */
+    CardDeck(String name, int resourceId, int faceCount, int columns) {
+        if (faceCount < 1 || columns < 1) {
+            throw new IllegalArgumentException("A deck needs at least one face in at least one column");
+        }
+        this.name = name;
+        this.resourceId = resourceId;
+        this.faceCount = faceCount;
+        this.columns = columns;
+        this.rows = (faceCount + columns - 1) / columns;
+    }
+
+    /**
+     * Get the name of the deck's theme
+     * @return
+     * The name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of faces in the deck
+     * @return
+     * The number of faces
+     */
+    int getFaceCount() {
+        return faceCount;
+    }
+
+    /**
+     * Calculate how far the atlas can be downsampled while each face stays at least as large as a
+     * tile. The image's size is read without decoding its pixels
+     * @param resources
+     * The resources holding the atlas image
+     * @param tileSize
+     * The width and height of a tile in pixels
+     * @return
+     * The largest power of two the atlas can be divided by, at least 1
+     */
+    int calculateSampleSize(Resources resources, int tileSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, options);
+
+        int faceSize = Math.min(options.outWidth / columns, options.outHeight / rows);
+        int sampleSize = 1;
+        while (tileSize > 0 && faceSize / (sampleSize * 2) >= tileSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Decode the atlas image, downsampled by the given sample size
+     * @param resources
+     * The resources holding the atlas image
+     * @param sampleSize
+     * The power of two to divide the image's width and height by, from calculateSampleSize
+     * @return
+     * The decoded atlas
+     * @throws IllegalArgumentException
+     * If the resource cannot be decoded as an image
+     */
+    Atlas decode(Resources resources, int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resourceId, options);
+        if (bitmap == null) throw new IllegalArgumentException("Deck " + name + " cannot be decoded");
+        return new Atlas(this, bitmap, sampleSize);
+    }
+}
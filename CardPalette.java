@@ -0,0 +1,112 @@
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/**
+ * The colours used for the faces of the cards. The colours are resolved from the colors resource
+ * file once per process and shared by every game, so starting a new game allocates no Paint objects.
+ * Cards refer to their colour by its index in the palette.
+ * The Paint objects are shared and must not be modified by the caller.
+ */
+final class CardPalette {
+
+    private static final int[] RESOURCE_COLOURS = {
+            R.color.aqua,
+            R.color.lime,
+            R.color.teal,
+            R.color.blue,
+            R.color.navy,
+            R.color.yellow,
+            R.color.orange,
+            R.color.silver
+    };
+
+    /**
+     * Hues of generated colours are spaced by the golden angle so that each new colour is as far
+     * as possible from the ones before it
+     */
+    private static final float GOLDEN_ANGLE = 137.508f;
+
+    private static CardPalette palette;
+
+    private final Paint[] colours;
+
+    private CardPalette(Paint[] colours) {
+        this.colours = colours;
+    }
+
+    /**
+     * Get a palette containing at least the given number of colours. The first eight colours come
+     * from the colors resource file, any further colours are generated. A cached palette is
+     * returned if it is large enough, otherwise it is replaced by a larger one that keeps the
+     * existing colours
+     * @param context
+     * Used to access the colour resources the first time the palette is created
+     * @param size
+     * The number of unique colours needed, at most GameBoard.MAX_COLOURS
+     * @return
+     * The shared palette
+     */
+    static synchronized CardPalette get(Context context, int size) {
+        if (palette != null && palette.size() >= size) return palette;
+
+        Paint[] colours = new Paint[Math.max(size, RESOURCE_COLOURS.length)];
+        int existing = 0;
+        if (palette != null) {
+            existing = palette.size();
+            System.arraycopy(palette.colours, 0, colours, 0, existing);
+        }
+        for (int i = existing; i < colours.length; i++) {
+            colours[i] = createColour(i < RESOURCE_COLOURS.length
+                    ? context.getResources().getColor(RESOURCE_COLOURS[i])
+                    : generateColour(i));
+        }
+        palette = new CardPalette(colours);
+        return palette;
+    }
+
+    /**
+     * Generate a colour that is not in the colors resource file. The hue is rotated for every
+     * colour, and the saturation and brightness alternate so that neighbouring hues are easier to
+     * tell apart
+     * @param index
+     * The index of the colour in the palette
+     * @return
+     * The generated colour
+     */
+    private static int generateColour(int index) {
+        float[] hsv = {
+                (index * GOLDEN_ANGLE) % 360f,
+                index % 2 == 0 ? 0.9f : 0.55f,
+                index % 3 == 0 ? 0.65f : 0.95f
+        };
+        return Color.HSVToColor(hsv);
+    }
+
+    private static Paint createColour(int colour) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(colour);
+        return paint;
+    }
+
+    /**
+     * Get the Paint for the colour at the given index
+     * @param colourIndex
+     * The index of the colour, as stored by the cards
+     * @return
+     * The shared Paint object for that colour
+     */
+    Paint getPaint(int colourIndex) {
+        return colours[colourIndex];
+    }
+
+    /**
+     * Get the number of colours in this palette
+     * @return
+     * The number of unique colours
+     */
+    int size() {
+        return colours.length;
+    }
+}
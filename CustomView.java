@@ -1,36 +1,296 @@
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.widget.Toast;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
 /**
- * Contains all the data structures and logic for the game & updating the canvas
+ * Draws the game on the canvas and turns touches into moves. The rules of the game are kept in
+ * GameEngine, this view renders the engine's board and reacts to the changes it reports
  */
 public class CustomView extends View {
 
+    /**
+     * Receives the scores and the current player whenever either changes, so whatever hosts the
+     * view can show the state of the game
+     */
+    interface ScoreListener {
+
+        /**
+         * The scores, the number of players or the player whose turn it is have changed. The
+         * players, their scores and their places on the leaderboard are read from the engine
+         * @param gameEngine
+         * The game whose scores have changed
+         */
+        void onScoreChanged(GameEngine gameEngine);
+    }
+
+    private static final String KEY_SUPER_STATE = "superState";
+    private static final String KEY_GAME_STATE = "gameState";
+
+    /**
+     * The smallest size, in density independent pixels, a tile can be comfortably tapped at. Boards
+     * whose tiles are smaller than this when the whole board is shown can be zoomed in until their
+     * tiles are this size
+     */
+    private static final float MIN_TOUCH_TILE_SIZE_DP = 48;
+    private static final float GRID_LINE_WIDTH_DP = 5;
+
     private int canvasWidthAndHeight;
-    private boolean isGameInitialised = false;
-    private Paint gridLinesColour, cardFaceDownColour, transparent;
-    private final float partitionRatio = 1 / 4f;
-    private LinkedList<Card> allCards;
+    private int tileOffset;
+    private Paint gridLinesColour, cardFaceDownColour;
+    private final Paint fadingCardColour = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint cardFacePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private int gridLineOverlap;
+    private int columns = 4;
+    private int rows = 4;
+    private int playerCount = 2;
+    private final Rect cardRect = new Rect();
+    private final Rect dirtyRect = new Rect();
+    private boolean isWholeViewInvalid = true;
+    private final Rect clipBounds = new Rect();
+    private GameEngine gameEngine;
+    private GameStateFile gameStateFile;
+    private StatsStore statsStore;
+    private ScoreListener scoreListener;
+    private final int[] reportedScores = new int[GameEngine.MAX_PLAYERS];
+    private int reportedPlayerCount;
+    private int reportedCurrentPlayerIndex = -1;
+    private final MoveJournal moveJournal = new MoveJournal();
+    private final Random seedGenerator = new Random();
+    private final BoardPreparer boardPreparer = new BoardPreparer();
+    private CardPalette cardPalette;
+    private CardDeck cardDeck;
+    private CardDeck.Atlas deckAtlas;
+    private final Rect atlasRect = new Rect();
+
+    private Bitmap boardLayer;
+    private final Canvas boardLayerCanvas = new Canvas();
+    private boolean isBoardLayerValid;
+
+    private final BoardViewport viewport = new BoardViewport();
+    private final Matrix viewMatrix = new Matrix();
+    private ScaleGestureDetector scaleGestureDetector;
+    private GestureDetector gestureDetector;
+    private Canvas cardCanvas;
+    private boolean isFaceDownDrawn;
+
+    private Choreographer choreographer;
+    private final TapQueue tapQueue = new TapQueue(32);
+    private boolean isTapDrainPosted;
+
+    private TurnController turnController;
+    private CardAnimator cardAnimator;
+    private SyncClient syncClient;
+    private int localSeat = -1;
+    private ViewMetrics metrics;
+    private long turnResolutionDueNanos;
+
+    private final TurnController.Scheduler turnScheduler = new TurnController.Scheduler() {
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            if (metrics != null) turnResolutionDueNanos = System.nanoTime() + delayMillis * 1000000;
+            postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            removeCallbacks(task);
+        }
+    };
+
+    private final GameEngine.Listener gameListener = new GameEngine.Listener() {
+        @Override
+        public void onCardFlipped(int cellIndex) {
+            moveJournal.record(cellIndex, gameEngine.getCurrentPlayerIndex(), SystemClock.uptimeMillis());
+            if (metrics != null) metrics.onCardFlipped();
+            cardAnimator.start(cellIndex, CardAnimator.FLIP_UP);
+            saveGameState();
+        }
+
+        @Override
+        public void onTurnResolved(int firstCellIndex, int secondCellIndex, boolean isMatch) {
+            if (metrics != null && turnResolutionDueNanos != 0) {
+                metrics.onTurnResolved(System.nanoTime() - turnResolutionDueNanos);
+                turnResolutionDueNanos = 0;
+            }
+            if (isMatch) isBoardLayerValid = false;
+            int animation = isMatch ? CardAnimator.FADE_OUT : CardAnimator.FLIP_DOWN;
+            cardAnimator.start(firstCellIndex, animation);
+            cardAnimator.start(secondCellIndex, animation);
+            reportScore();
+            saveGameState();
+        }
 
-    private Player playerOne;
-    private Player playerTwo;
-    private Player currentPlayer;
+        @Override
+        public void onGameOver(Player winningPlayer) {
+            String displayWinningText;
+            if (winningPlayer == null) {
+                displayWinningText = "Game ends in a draw with a score of " + gameEngine.getRankedPlayer(0).getCurrentScore() + " each";
+            } else {
+                displayWinningText = winningPlayer.getPlayerId() + " wins, with a score of " + winningPlayer.getCurrentScore();
+            }
+            Toast.makeText(getContext(), displayWinningText, Toast.LENGTH_SHORT).show();
+            statsStore.recordGame(gameEngine, System.currentTimeMillis());
+        }
+    };
 
-    private int pairsRemaining;
+    private final CardAnimator.Listener animationListener = new CardAnimator.Listener() {
+        @Override
+        public void onCardAnimated(int cellIndex) {
+            invalidateCard(cellIndex);
+        }
+    };
 
-    private Card cardOne;
-    private Card cardTwo;
+    /**
+     * Draws each visible card visited by drawCardsAndGrid onto cardCanvas: its face down tile if
+     * the board layer is not being used, and its face if it is face up and not animating
+     */
+    private final GameBoard.CardVisitor cardDrawer = new GameBoard.CardVisitor() {
+        @Override
+        public void visitCard(int cellIndex, boolean isFaceUp) {
+            if (isFaceDownDrawn) {
+                getTileRect(cellIndex, cardRect);
+                cardCanvas.drawRect(cardRect, cardFaceDownColour);
+            }
+            if (isFaceUp && !cardAnimator.isAnimating(cellIndex)) {
+                getCardRect(cellIndex, cardRect);
+                drawCardFace(cardCanvas, gameEngine.getGameBoard().getColourIndex(cellIndex), cardRect, 255);
+            }
+        }
+    };
 
-    private boolean isCardOneFlipped;
-    private boolean isCardTwoFlipped;
+    private final GestureDetector.SimpleOnGestureListener gestureListener = new GestureDetector.SimpleOnGestureListener() {
+        @Override
+        public boolean onDown(MotionEvent event) {
+            return true;
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent down, MotionEvent event, float distanceX, float distanceY) {
+            if (viewport.scroll(-distanceX, -distanceY)) onViewportChanged();
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapUp(MotionEvent event) {
+            if (!scaleGestureDetector.isInProgress()) queueTap(event.getX(), event.getY(), event.getEventTime());
+            return true;
+        }
+    };
+
+    /**
+     * Plays the taps queued since the last frame, once the frame's touch events have all been
+     * delivered and before it is drawn
+     */
+    private final Choreographer.FrameCallback tapDrainer = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            isTapDrainPosted = false;
+            tapQueue.drain(gameEngine.getGameBoard(), tileOffset, tapPlayer);
+        }
+    };
+
+    /**
+     * Plays each tap drained from the tap queue as a move through the turn controller. Taps
+     * outside of the grid are ignored, as are moves the game engine rejects.
+     * Once the second card of a turn is face up the turn is resolved after the reveal delay, so the
+     * user can see what colour the second card turned out to be. Taps during the reveal are
+     * dropped or queued according to the input policy.
+     * In a networked game the tap is sent to the host as a move request instead, if it is this
+     * device's turn, and the card is only turned up once the host accepts the move.
+     */
+    private final TapQueue.Listener tapPlayer = new TapQueue.Listener() {
+        @Override
+        public void onTap(int cellIndex, long eventTimeMillis) {
+            if (metrics != null) metrics.onTap(eventTimeMillis);
+            if (cellIndex < 0) {
+                if (metrics != null) metrics.onTapIgnored();
+                return;
+            }
+
+            if (syncClient == null) {
+                if (!turnController.play(cellIndex) && metrics != null) metrics.onTapIgnored();
+            } else if (gameEngine.getCurrentPlayerIndex() == localSeat
+                    && turnController.getState() != TurnController.State.GAME_OVER) {
+                syncClient.requestMove(cellIndex);
+            }
+        }
+    };
+
+    private final ScaleGestureDetector.SimpleOnScaleGestureListener scaleListener = new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            if (viewport.zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY())) onViewportChanged();
+            return true;
+        }
+    };
+
+    /**
+     * Plays a networked game's moves as the SyncHost decides them. The client calls this on its
+     * transport's thread, so each call is posted to the view's thread, where it is ignored if the
+     * view has left the client's game since
+     */
+    private class NetworkGameListener implements SyncClient.Listener {
+        SyncClient client;
+
+        @Override
+        public void onGameStarted(final int columns, final int rows, final int playerCount, final long seed, final int seat) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if (syncClient == client) startNetworkGame(columns, rows, playerCount, seed, seat);
+                }
+            });
+        }
+
+        @Override
+        public void onMove(int sequence, final int cellIndex) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if (syncClient != client) return;
+                    turnController.resolveNow();
+                    turnController.play(cellIndex);
+                }
+            });
+        }
+
+        @Override
+        public void onMoveRejected(int sequence) {
+            // Nothing was played locally, so there is nothing to undo
+        }
+
+        @Override
+        public void onGameAbandoned() {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if (syncClient != client) return;
+                    syncClient = null;
+                    localSeat = -1;
+                    Toast.makeText(getContext(), "The network game has ended", Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    }
 
     public CustomView(Context context) {
         super(context);
@@ -48,34 +308,140 @@ public class CustomView extends View {
     }
 
     /**
-     * Draws the current game board on our canvas. We initialise the game board rectangles and cards
-     * in here, even though object allocation is not recommended in this method due to the
-     * frequency it can be called. However we need a reference to the width/height of the canvas
-     * which can potentially be zero before this method is called. Given that we only call this once
-     * at the start of the game it has had no impact on performance
+     * Lays out the game board once the size of the canvas is known. A change of size only
+     * recomputes the size of the tiles, so the cards keep their colours and the game carries on
+     * where it was.
+     * @param w
+     * The new width of the view. Passed in by the Android Framework
+     * @param h
+     * The new height of the view. Passed in by the Android Framework
+     * @param oldw
+     * The previous width of the view, zero if it has not been laid out before
+     * @param oldh
+     * The previous height of the view, zero if it has not been laid out before
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        canvasWidthAndHeight = Math.min(
+                w - getPaddingLeft() - getPaddingRight(),
+                h - getPaddingTop() - getPaddingBottom());
+        tileOffset = calculateTileOffset();
+        onTileSizeChanged();
+        createBoardLayer(w, h);
+    }
+
+    /**
+     * Recreate the board layer if the view is attached again after its layer was released
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (boardLayer == null && getWidth() > 0 && getHeight() > 0) {
+            createBoardLayer(getWidth(), getHeight());
+        }
+    }
+
+    /**
+     * Release the board layer's memory, the saved game file and the stats log while the view is not
+     * on screen, and stop any card animations so they do not keep asking for frames. Taps waiting
+     * to be played are dropped, and their frame callback removed so it does not run on a detached
+     * view
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cardAnimator.reset(gameEngine.getGameBoard().getCardCount());
+        if (isTapDrainPosted) {
+            choreographer.removeFrameCallback(tapDrainer);
+            isTapDrainPosted = false;
+        }
+        tapQueue.clear();
+        if (boardLayer != null) {
+            boardLayer.recycle();
+            boardLayer = null;
+        }
+        try {
+            gameStateFile.close();
+        } catch (IOException e) {
+            // Nothing more can be done, the file is reopened on the next save
+        }
+        statsStore.close();
+    }
+
+    /**
+     * Save the current game in the compact form written by GameStateCodec, so it survives the
+     * activity being recreated or the process being killed
+     * @return
+     * A Bundle holding the view's own state and the saved game
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        Bundle state = new Bundle();
+        state.putParcelable(KEY_SUPER_STATE, super.onSaveInstanceState());
+        state.putByteArray(KEY_GAME_STATE, GameStateCodec.encode(gameEngine));
+        return state;
+    }
+
+    /**
+     * Restore the game saved by onSaveInstanceState. If the saved game cannot be read a new game
+     * is started instead
+     * @param state
+     * The Bundle returned by onSaveInstanceState
+     */
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof Bundle)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        Bundle bundle = (Bundle) state;
+        super.onRestoreInstanceState(bundle.getParcelable(KEY_SUPER_STATE));
+
+        byte[] gameState = bundle.getByteArray(KEY_GAME_STATE);
+        if (gameState == null) return;
+        try {
+            GameStateCodec.decode(ByteBuffer.wrap(gameState), gameEngine);
+            onGameRestored();
+            reportScore();
+        } catch (IllegalArgumentException e) {
+            resetGame();
+        }
+    }
+
+    /**
+     * Draws the current game board on our canvas. The board is laid out in onSizeChanged, so
+     * nothing is allocated here, and CoreBenchmark checks that visiting the cards does not allocate
      * @param canvas
      * The canvas where we will draw our cards. Passed in by the Android Framework
      */
     public void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        if (metrics != null) metrics.onFrameStart();
 
-        //Only initialise our board once
-        if (!isGameInitialised) {
-            GameBoard gameBoard = new GameBoard(generateTiles(), this.getContext());
-            isGameInitialised = true;
-            allCards = gameBoard.getCards();
+        // A frame is a partial redraw only if every invalidation since the last one was a card's
+        boolean isFullRedraw = isWholeViewInvalid || dirtyRect.isEmpty() || dirtyRect.contains(0, 0, getWidth(), getHeight());
+        isWholeViewInvalid = false;
+        dirtyRect.setEmpty();
+        if (viewport.isIdentity()) {
+            drawCardsAndGrid(canvas);
+        } else {
+            canvas.save();
+            canvas.concat(viewMatrix);
+            drawCardsAndGrid(canvas);
+            canvas.restore();
         }
-        drawCardsAndGrid(canvas);
+        if (metrics != null) metrics.onFrameEnd(isFullRedraw);
     }
 
     /**
      * Contains our logic to deal with one of the card on the canvas being touched.
-     * Find the cards associated with the x,y coordinates that the user has touched.
-     * Does validation to make sure the users second touch isn't on the card already touched,
-     * that the position touched is not an already matched card location, and then flips the cards.
-     * It then redraws the board, with a delay for the second card touch so the user can see what
-     * colour the second card turned out to be.
-     * Finally it calls updateGameState to see if the cards match or not
+     * On a board small enough to be tapped when shown whole, a card is played as soon as it is
+     * touched, by any finger: every pointer that goes down, the first with ACTION_DOWN and the rest
+     * with ACTION_POINTER_DOWN, is queued as a tap, so several players can tap at once. A bigger
+     * board can be zoomed with a pinch and scrolled with a drag, so a card is only played once the
+     * touch turns out to be a single tap. See queueTap.
      * @param event
      * The touch event
      * @return
@@ -83,117 +449,351 @@ public class CustomView extends View {
      */
     public boolean onTouchEvent(MotionEvent event) {
 
-        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
-            if (!isCardOneFlipped) {
-                for (Card card : allCards) {
-                    if (card.getCardRect().contains((int) event.getX(), (int) event.getY())) {
-                        cardOne = card;
-                        if (cardOne.isMatched()) return true;
-                        cardOne.flip();
-                        invalidate();
-                    }
-                }
-                isCardOneFlipped = true;
-            } else if (!isCardTwoFlipped) {
-                for (Card card : allCards) {
-                    if (card.getCardRect().contains((int) event.getX(), (int) event.getY())) {
-                        cardTwo = card;
-
-                        if (cardOne.equals(cardTwo) || cardTwo.isMatched()) {
-                            return true;
-                        }
-
-                        cardTwo.flip();
-                        isCardTwoFlipped = true;
-                        invalidate();
-                        this.postDelayed(new Runnable() {
-                            @Override
-                            public void run() {
-                                updateGameState(cardOne, cardTwo);
-                            }
-                        }, 500);
-
-                    }
-                }
+        if (viewport.isZoomable()) {
+            scaleGestureDetector.onTouchEvent(event);
+            gestureDetector.onTouchEvent(event);
+            return true;
+        }
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN) {
+            int pointerIndex = event.getActionIndex();
+            queueTap(event.getX(pointerIndex), event.getY(pointerIndex), event.getEventTime());
+        }
+        // The rest of the gesture, with the other pointers going down, is only sent if the down is taken
+        return true;
+    }
 
-            }
+    /**
+     * Queue a tap to be played, mapped through the viewport to board coordinates. The taps of every
+     * pointer that touched the screen since the last frame are hit-tested and played together, in
+     * the order they were made, at the start of the next frame, see tapPlayer
+     * @param x
+     * The x coordinate of the touch in the view
+     * @param y
+     * The y coordinate of the touch in the view
+     * @param eventTimeMillis
+     * The uptime of the touch, for the tap latency metric
+     */
+    private void queueTap(float x, float y, long eventTimeMillis) {
+        if (!tapQueue.add((int) Math.floor(viewport.toBoardX(x)), (int) Math.floor(viewport.toBoardY(y)), eventTimeMillis)) {
+            return;
+        }
+        if (!isTapDrainPosted) {
+            isTapDrainPosted = true;
+            choreographer.postFrameCallback(tapDrainer);
         }
-        return super.onTouchEvent(event);
-    }
-
-    /**
-     * Checks to see if the current player has selected two cards that match. If they do, it updates
-     * the score of the current player, sets the cards status' to matched, and changes their colour
-     * to blend in with the rest of the board so that they appear to have vanished from the canvas.
-     * It decrements the amount of pairs remaining, switches the current player and checks if the
-     * game is over.
-     * If the cards do not match the score is not increased, the cards are flipped back to face
-     * down, the current player is switched and the game continues.
-     * In both cases it sends a String to the main activity containing the current game state.
-     * @param cardOne
-     * The first card the user turned up
-     * @param cardTwo
-     * The second card the user turned up
-     */
-    private void updateGameState(Card cardOne, Card cardTwo) {
-
-        if (cardOne.matches(cardTwo)) {
-            cardOne.setColour(transparent);
-            cardTwo.setColour(transparent);
-            cardOne.setMatched(true);
-            cardTwo.setMatched(true);
-            isCardOneFlipped = false;
-            isCardTwoFlipped = false;
-            currentPlayer.incrementSccore();
-            changeCurrentPlayer();
-            pairsRemaining--;
-            checkIfGameIsOver();
-            invalidate();
+    }
+
+    /**
+     * Fit the board to the view again after the size of its tiles has changed: the whole board is
+     * shown, boards with tiles too small to tap can be zoomed until they can be, the grid lines are
+     * kept thin enough to leave room for the cards, and the deck is decoded for the size of the
+     * tiles at the highest zoom
+     */
+    private void onTileSizeChanged() {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        float density = getResources().getDisplayMetrics().density;
+        float maxScale = tileOffset > 0 ? density * MIN_TOUCH_TILE_SIZE_DP / tileOffset : 1;
+        viewport.setSize(getWidth(), getHeight(),
+                gameBoard.getColumns() * tileOffset, gameBoard.getRows() * tileOffset, maxScale);
+        updateViewMatrix();
+
+        gridLinesColour.setStrokeWidth(Math.min(density * GRID_LINE_WIDTH_DP, tileOffset / 8f));
+        gridLineOverlap = (int) Math.ceil(gridLinesColour.getStrokeWidth() / 2);
+        loadDeck();
+    }
+
+    /**
+     * Redraw the board after it has been zoomed or scrolled
+     */
+    private void onViewportChanged() {
+        updateViewMatrix();
+        invalidateView();
+    }
+
+    private void updateViewMatrix() {
+        viewMatrix.setScale(viewport.getScale(), viewport.getScale());
+        viewMatrix.postTranslate(viewport.getTranslateX(), viewport.getTranslateY());
+    }
+
+    /**
+     * Set the number of columns and rows of cards on the board. The default is a four by four
+     * board. If a game has already started the new dimensions are used from the next reset.
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board. Columns * rows must be even
+     */
+    void setBoardDimensions(int columns, int rows) {
+        GameBoard.checkDimensions(columns, rows);
+        this.columns = columns;
+        this.rows = rows;
+        boardPreparer.prepare(columns, rows);
+    }
+
+    /**
+     * Set the number of players taking turns. The default is two players. If a game has already
+     * started the new number of players is used from the next reset.
+     * @param playerCount
+     * The number of players, from 1 to GameEngine.MAX_PLAYERS
+     */
+    void setPlayerCount(int playerCount) {
+        gameEngine.setPlayerCount(playerCount);
+        this.playerCount = playerCount;
+    }
+
+    /**
+     * Set how long both cards of a turn stay on show before the turn is resolved. The default is
+     * 500 milliseconds
+     * @param revealDelayMillis
+     * The delay in milliseconds, or zero to resolve each turn straight away
+     */
+    void setRevealDelay(long revealDelayMillis) {
+        turnController.setRevealDelay(revealDelayMillis);
+    }
+
+    /**
+     * Set what happens to touches while both cards of a turn are on show. The default is to drop
+     * them
+     * @param inputPolicy
+     * The policy for touches during the reveal
+     */
+    void setInputPolicy(TurnController.InputPolicy inputPolicy) {
+        turnController.setInputPolicy(inputPolicy);
+    }
+
+    /**
+     * Set the themed deck the card faces are drawn from. The deck's atlas is decoded downsampled to
+     * the size of the tiles, and kept in the DeckCache so switching back to a deck is quick. Cards
+     * whose colour has no face in the deck are drawn in their flat colour
+     * @param cardDeck
+     * The deck, or null to draw every card in its flat colour
+     */
+    void setDeck(CardDeck cardDeck) {
+        this.cardDeck = cardDeck;
+        loadDeck();
+        invalidateView();
+    }
+
+    /**
+     * Fetch the atlas of the current deck for the current tile size. If the deck cannot be decoded
+     * the cards are drawn in their flat colours instead
+     */
+    private void loadDeck() {
+        if (cardDeck == null || tileOffset <= 0) {
+            deckAtlas = null;
+            return;
+        }
+        try {
+            deckAtlas = DeckCache.get(getContext(), cardDeck, (int) Math.ceil(tileOffset * viewport.getMaxScale()));
+        } catch (IllegalArgumentException e) {
+            deckAtlas = null;
+        }
+    }
+
+    /**
+     * Start or stop recording the view's performance metrics. While no metrics are set nothing is
+     * measured
+     * @param metrics
+     * The metrics to record into, or null to stop recording
+     */
+    void setMetrics(ViewMetrics metrics) {
+        if (this.metrics != null) this.metrics.stopCountingAllocations();
+        this.metrics = metrics;
+        turnResolutionDueNanos = 0;
+        if (metrics != null) metrics.startCountingAllocations();
+    }
+
+    /**
+     * Create a client to play a networked game on this view. The caller connects the client to a
+     * host with a transport, such as SocketSyncConnection.open off the main thread, then joins a
+     * game with it. When the game starts it replaces the game on the view, and from then on
+     * touches are sent to the host and the host's moves are played
+     * @return
+     * The client
+     */
+    SyncClient createSyncClient() {
+        leaveNetworkGame();
+        NetworkGameListener listener = new NetworkGameListener();
+        syncClient = new SyncClient(listener);
+        listener.client = syncClient;
+        return syncClient;
+    }
+
+    /**
+     * Start a new game without recreating the view. Any turn waiting to be resolved is cancelled
+     * and the game engine starts a new game, dealing a board shuffled ahead of time if one is
+     * ready and otherwise reshuffling the existing board unless the board dimensions have changed.
+     * A networked game is left, and the new game is played locally.
+     */
+    void resetGame() {
+        leaveNetworkGame();
+        startPreparedGame();
+        onNewGameStarted();
+    }
+
+    /**
+     * Start a networked game the host has started, dealing the board from the host's seed. The
+     * host's dimensions and number of players are only used for this game, so the next local game
+     * is played with the ones set on the view, and the boards the board preparer has shuffled for
+     * it are kept. A board dealt from the host's seed cannot be prepared ahead of time
+     */
+    private void startNetworkGame(int columns, int rows, int playerCount, long seed, int seat) {
+        localSeat = seat;
+        if (metrics != null) metrics.onGameReset(false);
+        gameEngine.setPlayerCount(playerCount);
+        startNewGame(columns, rows, seed);
+        gameEngine.setPlayerCount(this.playerCount);
+        onNewGameStarted();
+    }
+
+    /**
+     * Close the connection of a networked game, if one is being played
+     */
+    private void leaveNetworkGame() {
+        if (syncClient == null) return;
+        SyncClient client = syncClient;
+        syncClient = null;
+        localSeat = -1;
+        client.close();
+    }
+
+    /**
+     * Bring the view up to date with a new game started by startNewGame or startPreparedGame
+     */
+    private void onNewGameStarted() {
+        cardPalette = CardPalette.get(getContext(), gameEngine.getGameBoard().getColourCount());
+        tileOffset = calculateTileOffset();
+        onTileSizeChanged();
+        isBoardLayerValid = false;
+
+        reportScore();
+        saveGameState();
+        invalidateView();
+    }
+
+    /**
+     * Bring the view up to date with a game restored into the game engine. The restored board's
+     * dimensions become the view's board dimensions, and a turn that was waiting to be resolved
+     * is resolved after the usual delay
+     */
+    private void onGameRestored() {
+        turnController.reset();
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        cardAnimator.reset(gameBoard.getCardCount());
+        tapQueue.clear();
+        columns = gameBoard.getColumns();
+        rows = gameBoard.getRows();
+        boardPreparer.prepare(columns, rows);
+        cardPalette = CardPalette.get(getContext(), gameBoard.getColourCount());
+        tileOffset = calculateTileOffset();
+        onTileSizeChanged();
+        isBoardLayerValid = false;
+        moveJournal.startFromState(GameStateCodec.encode(gameEngine), SystemClock.uptimeMillis());
+        invalidateView();
+    }
+
+    /**
+     * Start a new local game on a board the board preparer has shuffled ahead of time, or on one
+     * shuffled now from a new seed if none is ready, as startNewGame does
+     */
+    private void startPreparedGame() {
+        BoardPreparer.PreparedBoard board = boardPreparer.take(columns, rows);
+        if (metrics != null) metrics.onGameReset(board != null);
+        if (board == null) {
+            startNewGame(columns, rows, seedGenerator.nextLong());
         } else {
-            isCardOneFlipped = false;
-            isCardTwoFlipped = false;
-            cardOne.flip();
-            cardTwo.flip();
-            changeCurrentPlayer();
-            invalidate();
+            gameEngine.newGame(columns, rows, board.getColourIndices());
+            onGameDealt(board.getSeed());
         }
-        updateTextViewInMainActivity();
     }
 
     /**
-     * Send a String to the main activity showing the scores and the current player
+     * Start a new game on a board shuffled with the given seed, cancelling any turn waiting to be
+     * resolved, any card animations and any taps not yet played, and start journaling its moves
+     * from that seed
      */
-    private void updateTextViewInMainActivity() {
-        MainActivity mainActivity = (MainActivity) getContext();
-        String updateText = "Player one: " + playerOne.getCurrentScore() + ". Player two: " + playerTwo.getCurrentScore() + ".\nCurrentPlayer: " + currentPlayer.getPlayerId();
-        mainActivity.update(updateText);
+    private void startNewGame(int columns, int rows, long seed) {
+        gameEngine.newGame(columns, rows, seed);
+        onGameDealt(seed);
     }
 
     /**
-     * Flips from Player one to Player two, or vice versa
+     * Start journaling a game that has just been dealt from the given seed, and cancel everything
+     * left over from the game before
      */
-    private void changeCurrentPlayer() {
-        if (currentPlayer == playerOne)
-            currentPlayer = playerTwo;
-        else currentPlayer = playerOne;
+    private void onGameDealt(long seed) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        moveJournal.startSeeded(gameBoard.getColumns(), gameBoard.getRows(), gameEngine.getPlayerCount(), seed, SystemClock.uptimeMillis());
+        turnController.reset();
+        cardAnimator.reset(gameBoard.getCardCount());
+        tapQueue.clear();
     }
 
     /**
-     * Checks if the game is over (there are no more card pairs left unmatched)
-     * Checks the users scores and declares the winner or a draw in a Toast message.
+     * Get the journal of every move in the current game, for example to attach to a bug report.
+     * A game restored after the process was killed is journaled from the state it was restored in
+     * @return
+     * The move journal
      */
-    private void checkIfGameIsOver() {
+    MoveJournal getMoveJournal() {
+        return moveJournal;
+    }
 
-        if (pairsRemaining == 0) {
-            if (playerOne.getCurrentScore() == playerTwo.getCurrentScore()) {
-                String displayWinningText = "Game ends in a draw with a score of " + playerOne.getCurrentScore() + " each";
-                Toast.makeText(getContext(), displayWinningText, Toast.LENGTH_SHORT).show();
-            } else {
-                Player winningPlayer = (playerOne.getCurrentScore()) > playerTwo.getCurrentScore() ? playerOne : playerTwo;
-                String displayWinningText = winningPlayer.getPlayerId() + " wins, with a score of " + winningPlayer.getCurrentScore();
-                Toast.makeText(getContext(), displayWinningText, Toast.LENGTH_SHORT).show();
+    /**
+     * Get the lifetime statistics of every game finished in this view, for example to show a
+     * leaderboard for the current board size
+     * @return
+     * The stats store
+     */
+    StatsStore getStatsStore() {
+        return statsStore;
+    }
+
+    /**
+     * Keep the latest state of the game in the game state file, so it can be recovered if the
+     * process is killed. Saving is best effort, a game that cannot be saved carries on
+     */
+    private void saveGameState() {
+        try {
+            gameStateFile.save(gameEngine);
+        } catch (IOException e) {
+            // The game carries on, it just cannot be recovered after a crash
+        }
+    }
+
+    /**
+     * Set the listener to be told the scores and the current player. It is told the current ones
+     * straight away
+     * @param scoreListener
+     * The listener, or null to stop reporting scores
+     */
+    void setScoreListener(ScoreListener scoreListener) {
+        this.scoreListener = scoreListener;
+        reportedCurrentPlayerIndex = -1;
+        reportScore();
+    }
+
+    /**
+     * Tell the score listener the scores and the current player, if they have changed since they
+     * were last reported
+     */
+    private void reportScore() {
+        if (scoreListener == null) return;
+        boolean isChanged = gameEngine.getCurrentPlayerIndex() != reportedCurrentPlayerIndex
+                || gameEngine.getPlayerCount() != reportedPlayerCount;
+        for (int i = 0; i < gameEngine.getPlayerCount(); i++) {
+            int score = gameEngine.getPlayer(i).getCurrentScore();
+            if (score != reportedScores[i]) {
+                reportedScores[i] = score;
+                isChanged = true;
             }
         }
+        if (!isChanged) return;
+
+        reportedCurrentPlayerIndex = gameEngine.getCurrentPlayerIndex();
+        reportedPlayerCount = gameEngine.getPlayerCount();
+        scoreListener.onScoreChanged(gameEngine);
     }
 
     private void init() {
@@ -201,23 +801,35 @@ public class CustomView extends View {
         gridLinesColour = new Paint(Paint.ANTI_ALIAS_FLAG);
         gridLinesColour.setColor(getResources().getColor(R.color.black));
         gridLinesColour.setStyle(Paint.Style.STROKE);
-        gridLinesColour.setStrokeWidth(getResources().getDisplayMetrics().density * 5);
+        gridLinesColour.setStrokeWidth(getResources().getDisplayMetrics().density * GRID_LINE_WIDTH_DP);
+        gridLineOverlap = (int) Math.ceil(gridLinesColour.getStrokeWidth() / 2);
 
         cardFaceDownColour = new Paint(Paint.ANTI_ALIAS_FLAG);
         cardFaceDownColour.setStyle(Paint.Style.FILL);
         cardFaceDownColour.setColor(getResources().getColor(R.color.gray));
 
-        transparent = new Paint(Paint.ANTI_ALIAS_FLAG);
-        transparent.setStyle(Paint.Style.FILL);
-        transparent.setColor(getResources().getColor(R.color.transparent));
+        gameEngine = new GameEngine(columns, rows);
+        gameEngine.setListener(gameListener);
+        turnController = new TurnController(gameEngine, turnScheduler);
+        choreographer = Choreographer.getInstance();
+        cardAnimator = new CardAnimator(choreographer, animationListener);
+        scaleGestureDetector = new ScaleGestureDetector(getContext(), scaleListener);
+        gestureDetector = new GestureDetector(getContext(), gestureListener);
+        cardPalette = CardPalette.get(getContext(), gameEngine.getGameBoard().getColourCount());
 
-        isCardOneFlipped = false;
-        isCardTwoFlipped = false;
+        statsStore = StatsStore.get(new File(getContext().getFilesDir(), "stats.log"));
 
-        playerOne = new Player("Player One");
-        playerTwo = new Player("Player Two");
-        currentPlayer = playerOne;
-        pairsRemaining = 8;
+        gameStateFile = new GameStateFile(new File(getContext().getFilesDir(), "game_state.bin"));
+        try {
+            // A game that was over when it was saved is not worth restoring
+            if (gameStateFile.restore(gameEngine) && !gameEngine.isGameOver()) {
+                onGameRestored();
+            } else {
+                startPreparedGame();
+            }
+        } catch (IOException e) {
+            startPreparedGame();
+        }
     }
 
     /**
@@ -252,61 +864,241 @@ public class CustomView extends View {
     }
 
     /**
-     * Draw the grid lines in between each card using the partition ratio defined when the class is
-     * created. We use 1 / 4f to give us a four by four grid which will contain our sixteen cards
+     * Draw the grid lines in between each card, for the given range of columns and rows only. The
+     * tiles are square, so the board fills the canvas along its longer side and the grid lines
+     * stop at the edge of the board
      * @param canvas
      * The canvas where our grid lines will be drawn
+     * @param firstColumn
+     * The first column of cards being drawn
+     * @param lastColumn
+     * The last column of cards being drawn
+     * @param firstRow
+     * The first row of cards being drawn
+     * @param lastRow
+     * The last row of cards being drawn
      */
-    private void drawGridLines(Canvas canvas) {
-
-        for (int i = 1; i <= 3; i++) {
-            canvas.drawLine(
-                    canvasWidthAndHeight * (i * partitionRatio),
-                    0f,
-                    canvasWidthAndHeight * (i * partitionRatio),
-                    canvasWidthAndHeight,
-                    gridLinesColour);
+    private void drawGridLines(Canvas canvas, int firstColumn, int lastColumn, int firstRow, int lastRow) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        int left = firstColumn * tileOffset;
+        int right = (lastColumn + 1) * tileOffset;
+        int top = firstRow * tileOffset;
+        int bottom = (lastRow + 1) * tileOffset;
 
-            canvas.drawLine(
-                    0f,
-                    canvasWidthAndHeight * (i * partitionRatio),
-                    canvasWidthAndHeight,
-                    canvasWidthAndHeight * (i * partitionRatio),
-                    gridLinesColour);
+        int lastLine = Math.min(gameBoard.getColumns() - 1, lastColumn + 1);
+        for (int i = Math.max(1, firstColumn); i <= lastLine; i++) {
+            canvas.drawLine(i * tileOffset, top, i * tileOffset, bottom, gridLinesColour);
+        }
+        lastLine = Math.min(gameBoard.getRows() - 1, lastRow + 1);
+        for (int j = Math.max(1, firstRow); j <= lastLine; j++) {
+            canvas.drawLine(left, j * tileOffset, right, j * tileOffset, gridLinesColour);
         }
     }
 
     /**
-     * Generate a two dimensional array - four by four - containing the Rectangle objects that will
-     * be placed in our cards. Using our partition ratio of 1 / 4f gives us the four by four grid.
+     * Calculate the size of each square tile, so that the longer side of the current board fills
+     * the canvas
      * @return
-     * The four by four array of rectangles that will be used to construct the card objects
-     */
-    private Rect[][] generateTiles() {
-        Rect[][] tiles = new Rect[4][4];
-        int offset = (int) (canvasWidthAndHeight * partitionRatio);
-        for (int j = 0; j <= 3; j++) {
-            for (int i = 0; i <= 3; i++) {
-                tiles[i][j] = new Rect(i * offset, j * offset, (i + 1) * offset, (j + 1) * offset);
+     * The width and height of each tile in pixels
+     */
+    private int calculateTileOffset() {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        return canvasWidthAndHeight / Math.max(gameBoard.getColumns(), gameBoard.getRows());
+    }
+
+    /**
+     * Set the Rectangle of the tile at the given position on the canvas
+     * @param cellIndex
+     * The position of the card on the board, row * columns + column
+     * @param outRect
+     * The Rectangle to be set to the tile's coordinates
+     */
+    private void getTileRect(int cellIndex, Rect outRect) {
+        int boardColumns = gameEngine.getGameBoard().getColumns();
+        int left = (cellIndex % boardColumns) * tileOffset;
+        int top = (cellIndex / boardColumns) * tileOffset;
+        outRect.set(left, top, left + tileOffset, top + tileOffset);
+    }
+
+    /**
+     * Mark the whole canvas as needing to be redrawn, so the next frame is counted as a full redraw
+     */
+    private void invalidateView() {
+        isWholeViewInvalid = true;
+        invalidate();
+    }
+
+    /**
+     * Mark the area of the canvas covered by a card as needing to be redrawn, rather than the
+     * whole canvas. The area includes the half of each grid line that overlaps the card, and is
+     * mapped through the viewport if the board is zoomed or scrolled. The
+     * areas of every card changed before the next frame are combined into one rectangle.
+     * Note that with hardware acceleration the whole view may still be redrawn, but only the cards
+     * within the area are drawn by drawCardsAndGrid
+     * @param cellIndex
+     * The position of the card that has changed
+     */
+    private void invalidateCard(int cellIndex) {
+        getTileRect(cellIndex, cardRect);
+        cardRect.inset(-gridLineOverlap, -gridLineOverlap);
+        if (!viewport.isIdentity()) {
+            cardRect.set((int) Math.floor(viewport.toViewX(cardRect.left)), (int) Math.floor(viewport.toViewY(cardRect.top)),
+                    (int) Math.ceil(viewport.toViewX(cardRect.right)), (int) Math.ceil(viewport.toViewY(cardRect.bottom)));
+        }
+        dirtyRect.union(cardRect);
+        invalidate(dirtyRect);
+        if (metrics != null) metrics.onInvalidate();
+    }
+
+    /**
+     * Create the offscreen bitmap holding the parts of the board that rarely change, the face down
+     * cards and the grid lines. The layer is the size of the view and is drawn on the next frame
+     * @param width
+     * The width of the view
+     * @param height
+     * The height of the view
+     */
+    private void createBoardLayer(int width, int height) {
+        if (boardLayer != null) {
+            if (boardLayer.getWidth() == width && boardLayer.getHeight() == height) {
+                isBoardLayerValid = false;
+                return;
             }
+            boardLayer.recycle();
+            boardLayer = null;
+        }
+        if (width > 0 && height > 0) {
+            boardLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            boardLayerCanvas.setBitmap(boardLayer);
+        }
+        isBoardLayerValid = false;
+    }
+
+    /**
+     * Draw every unmatched card face down, and the grid lines on top of them, into the board
+     * layer. This only needs to happen when the board is resized, reset or a pair is matched
+     */
+    private void renderBoardLayer() {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        boardLayer.eraseColor(Color.TRANSPARENT);
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (gameBoard.isMatched(i)) continue;
+            getTileRect(i, cardRect);
+            boardLayerCanvas.drawRect(cardRect, cardFaceDownColour);
         }
-        return tiles;
+        drawGridLines(boardLayerCanvas, 0, gameBoard.getColumns() - 1, 0, gameBoard.getRows() - 1);
+        isBoardLayerValid = true;
     }
 
     /**
-     * Draw the cards and grid lines on our canvas, asking each card what colour it is currently if
-     * it is face up
+     * Draw the cards and grid lines on our canvas. While the whole board is shown the face down
+     * cards and the grid lines are copied from the board layer, so only the face up cards are drawn
+     * individually, asking each what colour it is and drawing its face from the deck's atlas, if a
+     * deck is set. While the board is zoomed or scrolled the canvas is in board coordinates and
+     * the layer would be stretched, so the face down cards and grid lines are drawn as well, but
+     * only for the rows and columns on screen. Face up cards are inset by half a grid line on each
+     * side that borders another card so the grid stays on top of them, and only the cards within
+     * the canvas' clip bounds are visited, see GameBoard.visitCards. Matched cards are not drawn so
+     * they blend in with the rest of the board.
+     * Cards that are animating are drawn afterwards from their animation: a card turning over
+     * narrows or widens its face about its centre, over the face down card in the board layer, and
+     * a matched card fades out over the empty tile it leaves behind
      * @param canvas
      * The canvas where our cards and grid lines will be drawn
      */
     private void drawCardsAndGrid(Canvas canvas) {
-        Paint currentColour;
-        for (Card card : allCards) {
-            if (card.isFaceUp())
-                currentColour = card.getColour();
-            else currentColour = cardFaceDownColour;
-            canvas.drawRect(card.getCardRect(), currentColour);
-        }
-        drawGridLines(canvas);
+        if (boardLayer == null || tileOffset <= 0 || !canvas.getClipBounds(clipBounds)) return;
+
+        isFaceDownDrawn = !viewport.isIdentity();
+        if (!isFaceDownDrawn) {
+            if (!isBoardLayerValid) {
+                long renderStartNanos = metrics != null ? System.nanoTime() : 0;
+                renderBoardLayer();
+                if (metrics != null) metrics.onBoardLayerRendered(System.nanoTime() - renderStartNanos);
+            }
+            canvas.drawBitmap(boardLayer, 0, 0, null);
+        }
+
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        int boardColumns = gameBoard.getColumns();
+        int boardRows = gameBoard.getRows();
+        int firstColumn = Math.max(0, clipBounds.left / tileOffset);
+        int lastColumn = Math.min(boardColumns - 1, (clipBounds.right - 1) / tileOffset);
+        int firstRow = Math.max(0, clipBounds.top / tileOffset);
+        int lastRow = Math.min(boardRows - 1, (clipBounds.bottom - 1) / tileOffset);
+
+        cardCanvas = canvas;
+        gameBoard.visitCards(clipBounds.left, clipBounds.top, clipBounds.right, clipBounds.bottom,
+                tileOffset, isFaceDownDrawn, cardDrawer);
+        cardCanvas = null;
+        if (isFaceDownDrawn) drawGridLines(canvas, firstColumn, lastColumn, firstRow, lastRow);
+
+        for (int a = 0; a < cardAnimator.getActiveCount(); a++) {
+            int i = cardAnimator.getActiveCell(a);
+            int row = i / boardColumns;
+            int column = i % boardColumns;
+            if (row < firstRow || row > lastRow || column < firstColumn || column > lastColumn) continue;
+
+            getCardRect(i, cardRect);
+            float progress = cardAnimator.getProgress(i);
+            int animation = cardAnimator.getAnimation(i);
+            int alpha = 255;
+            if (animation == CardAnimator.FADE_OUT) {
+                alpha = (int) (255 * (1 - progress));
+            } else {
+                float visibleWidth = animation == CardAnimator.FLIP_UP ? progress : 1 - progress;
+                int inset = (int) (cardRect.width() * (1 - visibleWidth) / 2);
+                cardRect.left += inset;
+                cardRect.right -= inset;
+            }
+            drawCardFace(canvas, gameBoard.getColourIndex(i), cardRect, alpha);
+        }
+    }
+
+    /**
+     * Draw the face of a card, from the deck's atlas if it has a face for the card's colour or in
+     * the flat colour otherwise
+     * @param canvas
+     * The canvas where the card will be drawn
+     * @param colourIndex
+     * The colour index of the card
+     * @param rect
+     * The rectangle the face fills
+     * @param alpha
+     * The opacity of the face, from 0 to 255
+     */
+    private void drawCardFace(Canvas canvas, int colourIndex, Rect rect, int alpha) {
+        if (deckAtlas != null && deckAtlas.hasFace(colourIndex)) {
+            cardFacePaint.setAlpha(alpha);
+            deckAtlas.drawFace(canvas, colourIndex, rect, cardFacePaint, atlasRect);
+            return;
+        }
+        Paint colour = cardPalette.getPaint(colourIndex);
+        if (alpha < 255) {
+            fadingCardColour.setColor(colour.getColor());
+            fadingCardColour.setAlpha(alpha * colour.getAlpha() / 255);
+            colour = fadingCardColour;
+        }
+        canvas.drawRect(rect, colour);
+    }
+
+    /**
+     * Set the Rectangle a face up card is drawn in, which is its tile inset by half a grid line on
+     * each side that borders another card
+     * @param cellIndex
+     * The position of the card on the board
+     * @param outRect
+     * The Rectangle to be set to the card's coordinates
+     */
+    private void getCardRect(int cellIndex, Rect outRect) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        int boardColumns = gameBoard.getColumns();
+        int row = cellIndex / boardColumns;
+        int column = cellIndex % boardColumns;
+        getTileRect(cellIndex, outRect);
+        if (column > 0) outRect.left += gridLineOverlap;
+        if (column < boardColumns - 1) outRect.right -= gridLineOverlap;
+        if (row > 0) outRect.top += gridLineOverlap;
+        if (row < gameBoard.getRows() - 1) outRect.bottom -= gridLineOverlap;
     }
 }
@@ -0,0 +1,74 @@
+import android.content.Context;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently used decks decoded, so switching back to a theme does not decode its atlas again.
+ * The cache holds one atlas per deck and is shared by every view in the process. When the atlases
+ * together take more than an eighth of the heap the least recently used ones are dropped. Dropped
+ * atlases are not recycled, as a view may still be drawing them, and are reclaimed by the garbage
+ * collector once nothing refers to them
+ */
+final class DeckCache {
+
+    private static final long MAX_BYTES = Runtime.getRuntime().maxMemory() / 8;
+
+    private static final LinkedHashMap<String, CardDeck.Atlas> atlases =
+            new LinkedHashMap<String, CardDeck.Atlas>(8, 0.75f, true);
+    private static long cachedBytes;
+
+    private DeckCache() {
+    }
+
+    /**
+     * Get a deck decoded for tiles of the given size. A cached atlas is returned if it is detailed
+     * enough for the tiles, otherwise the deck is decoded, downsampled to the tile size, and
+     * replaces the cached atlas
+     * @param context
+     * Used to access the resource holding the deck's atlas
+     * @param deck
+     * The deck
+     * @param tileSize
+     * The width and height of a tile in pixels
+     * @return
+     * The decoded deck
+     * @throws IllegalArgumentException
+     * If the deck's atlas cannot be decoded
+     */
+    static synchronized CardDeck.Atlas get(Context context, CardDeck deck, int tileSize) {
+        CardDeck.Atlas atlas = atlases.get(deck.getName());
+        if (atlas != null && atlas.getDeck() == deck && atlas.isDetailedEnough(tileSize)) return atlas;
+
+        int sampleSize = deck.calculateSampleSize(context.getResources(), tileSize);
+        atlas = deck.decode(context.getResources(), sampleSize);
+        CardDeck.Atlas replaced = atlases.put(deck.getName(), atlas);
+        if (replaced != null) cachedBytes -= replaced.getByteCount();
+        cachedBytes += atlas.getByteCount();
+        trim(atlas);
+        return atlas;
+    }
+
+    /**
+     * Drop every cached atlas, for example when the system is low on memory
+     */
+    static synchronized void clear() {
+        atlases.clear();
+        cachedBytes = 0;
+    }
+
+    /**
+     * Drop the least recently used atlases until the cache fits in its budget. The atlas just
+     * decoded is always kept, even if it is larger than the budget on its own
+     */
+    private static void trim(CardDeck.Atlas keep) {
+        Iterator<Map.Entry<String, CardDeck.Atlas>> iterator = atlases.entrySet().iterator();
+        while (cachedBytes > MAX_BYTES && iterator.hasNext()) {
+            CardDeck.Atlas atlas = iterator.next().getValue();
+            if (atlas == keep) continue;
+            cachedBytes -= atlas.getByteCount();
+            iterator.remove();
+        }
+    }
+}
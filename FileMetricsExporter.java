@@ -0,0 +1,59 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Exports metrics by appending them to a local file, such as one in the app's files directory that
+ * can be pulled from a device. Each snapshot is written as a line with the time it was taken,
+ * followed by a line for each counter and histogram
+ */
+class FileMetricsExporter implements MetricsExporter {
+
+    private final File file;
+    private final StringBuilder snapshot = new StringBuilder();
+
+    /**
+     * Constructor
+     * @param file
+     * The file to append to, created by the first flush
+     */
+    FileMetricsExporter(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void exportCounter(String name, long value) {
+        startSnapshot();
+        snapshot.append(name).append(' ').append(value).append('\n');
+    }
+
+    @Override
+    public void exportHistogram(String name, MetricsHistogram histogram) {
+        startSnapshot();
+        snapshot.append(name).append(' ').append(histogram).append('\n');
+    }
+
+    /**
+     * Append the snapshot exported since the last flush to the file
+     * @throws IOException
+     * If the file cannot be written to
+     */
+    @Override
+    public void flush() throws IOException {
+        if (snapshot.length() == 0) return;
+        Writer writer = new FileWriter(file, true);
+        try {
+            writer.write(snapshot.toString());
+        } finally {
+            writer.close();
+        }
+        snapshot.setLength(0);
+    }
+
+    private void startSnapshot() {
+        if (snapshot.length() == 0) {
+            snapshot.append("# metrics at ").append(System.currentTimeMillis()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,514 @@
+import java.util.Random;
+
+/**
+ * Contains the rules of the game: which cards may be flipped, whether a turn's two cards match,
+ * the players scores and whose turn it is. The engine has no dependency on Android, so games can
+ * be played and simulated on a plain JVM. Moves are given as the position of a card on the board,
+ * row * columns + column, and changes to the game are reported to a Listener.
+ * A turn is played by flipping two cards and then calling resolveTurn, which leaves the caller in
+ * control of how long both cards stay face up.
+ */
+class GameEngine {
+
+    /**
+     * Receives the changes to the state of a game as they happen
+     */
+    interface Listener {
+
+        /**
+         * A card has been turned face up
+         * @param cellIndex
+         * The position of the card on the board
+         */
+        void onCardFlipped(int cellIndex);
+
+        /**
+         * The two cards of a turn have been compared. If they matched they are now matched and the
+         * player's score has increased, otherwise they have been turned face down again. In both
+         * cases the current player has changed
+         * @param firstCellIndex
+         * The position of the first card turned up
+         * @param secondCellIndex
+         * The position of the second card turned up
+         * @param isMatch
+         * True if the cards matched, false otherwise
+         */
+        void onTurnResolved(int firstCellIndex, int secondCellIndex, boolean isMatch);
+
+        /**
+         * Every pair has been matched
+         * @param winningPlayer
+         * The player with the highest score, or null if two or more players share the highest
+         * score
+         */
+        void onGameOver(Player winningPlayer);
+    }
+
+    static final int MAX_PLAYERS = 8;
+
+    private static final String[] PLAYER_NAMES = {
+            "One", "Two", "Three", "Four", "Five", "Six", "Seven", "Eight"
+    };
+
+    private GameBoard gameBoard;
+    private final Random random;
+    private Listener listener;
+
+    /**
+     * Every player that can take part, of which the first playerCount are in the current game.
+     * Each Player is a view onto its entry in scores
+     */
+    private final Player[] players = new Player[MAX_PLAYERS];
+    private final int[] scores = new int[MAX_PLAYERS];
+    private int playerCount = 2;
+    private int nextPlayerCount = 2;
+    private int currentPlayerIndex;
+
+    /**
+     * The indices of the players in the current game, highest score first. Players with the same
+     * score are in the order they reached it, and the order is kept up to date as each pair is
+     * matched rather than sorted at the end of the game
+     */
+    private final int[] leaderboard = new int[MAX_PLAYERS];
+
+    private int pairsRemaining;
+    private int turnCount;
+    private final MatchIndex matchIndex = new MatchIndex();
+
+    private int cardOneIndex;
+    private int cardTwoIndex;
+
+    private boolean isCardOneFlipped;
+    private boolean isCardTwoFlipped;
+
+    /**
+     * Starts a game between two players on a new, randomly shuffled board
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     */
+    GameEngine(int columns, int rows) {
+        this(columns, rows, new Random());
+    }
+
+    /**
+     * Starts a game between two players on a new board
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @param random
+     * The source of randomness used to shuffle the board for this and every later game
+     */
+    GameEngine(int columns, int rows, Random random) {
+        this(columns, rows, 2, random);
+    }
+
+    /**
+     * Starts a game between the given number of players on a new board. An engine given a Random
+     * seeded with a seed deals the same board as newGame with that seed
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @param playerCount
+     * The number of players, from 1 to MAX_PLAYERS, for this and every later game until
+     * setPlayerCount is called
+     * @param random
+     * The source of randomness used to shuffle the board for this and every later game
+     */
+    GameEngine(int columns, int rows, int playerCount, Random random) {
+        this.random = random;
+        setPlayerCount(playerCount);
+        for (int i = 0; i < MAX_PLAYERS; i++) {
+            players[i] = new Player("Player " + PLAYER_NAMES[i], i, scores);
+        }
+        newGame(columns, rows);
+    }
+
+    /**
+     * Set the listener to be told about changes to the game
+     * @param listener
+     * The listener, or null to stop reporting changes
+     */
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set the number of players taking turns, from the next new game. There are two players
+     * unless this is called
+     * @param playerCount
+     * The number of players, from 1 to MAX_PLAYERS
+     */
+    void setPlayerCount(int playerCount) {
+        if (playerCount < 1 || playerCount > MAX_PLAYERS) {
+            throw new IllegalArgumentException("There must be between 1 and " + MAX_PLAYERS + " players");
+        }
+        nextPlayerCount = playerCount;
+    }
+
+    /**
+     * Start a new game, cancelling any turn in progress. The existing board is reshuffled if it has
+     * the given dimensions, otherwise a new board is created. Every player's score is reset and
+     * player one goes first
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     */
+    void newGame(int columns, int rows) {
+        if (hasBoard(columns, rows)) {
+            gameBoard.reshuffle();
+        } else {
+            gameBoard = new GameBoard(columns, rows, random);
+        }
+        startGame();
+    }
+
+    /**
+     * Start a new game on a board whose colours have already been shuffled, for example by a
+     * BoardPreparer, so no time is spent shuffling. Colours shuffled by GameBoard.shuffleColours
+     * from a seed give the same game as newGame with that seed
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @param shuffledColours
+     * The colour of each card, which is copied onto the board
+     */
+    void newGame(int columns, int rows, int[] shuffledColours) {
+        if (hasBoard(columns, rows)) {
+            gameBoard.reshuffle(shuffledColours);
+        } else {
+            gameBoard = new GameBoard(columns, rows, random, shuffledColours);
+        }
+        startGame();
+    }
+
+    private boolean hasBoard(int columns, int rows) {
+        return gameBoard != null && gameBoard.getColumns() == columns && gameBoard.getRows() == rows;
+    }
+
+    /**
+     * Reset the scores and turns for a game on the newly dealt board
+     */
+    private void startGame() {
+        pairsRemaining = gameBoard.getCardCount() / 2;
+        turnCount = 0;
+
+        isCardOneFlipped = false;
+        isCardTwoFlipped = false;
+        cardOneIndex = -1;
+        cardTwoIndex = -1;
+
+        playerCount = nextPlayerCount;
+        for (int i = 0; i < playerCount; i++) {
+            scores[i] = 0;
+            leaderboard[i] = i;
+        }
+        currentPlayerIndex = 0;
+        matchIndex.reset(gameBoard, playerCount);
+    }
+
+    /**
+     * Start a new game on a board shuffled with the given seed. The same seed and dimensions
+     * always give the same board, so a game can be replayed or shared as a daily challenge
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @param seed
+     * The seed of the shuffle
+     */
+    void newGame(int columns, int rows, long seed) {
+        random.setSeed(seed);
+        newGame(columns, rows);
+    }
+
+    /**
+     * Turn a card face up as the current player's first or second card of their turn. The move is
+     * ignored if the card is already matched, is the card already turned up this turn, or if both
+     * cards of the turn are already face up and waiting for resolveTurn
+     * @param cellIndex
+     * The position of the card on the board, row * columns + column
+     * @return
+     * True if the card was turned face up, false if the move was ignored
+     */
+    boolean flip(int cellIndex) {
+        if (isCardTwoFlipped || cellIndex < 0 || cellIndex >= gameBoard.getCardCount()) return false;
+
+        if (gameBoard.isMatched(cellIndex)) return false;
+
+        if (!isCardOneFlipped) {
+            cardOneIndex = cellIndex;
+            isCardOneFlipped = true;
+        } else {
+            if (cardOneIndex == cellIndex) return false;
+
+            cardTwoIndex = cellIndex;
+            isCardTwoFlipped = true;
+        }
+        gameBoard.flip(cellIndex);
+        matchIndex.onCardRevealed(currentPlayerIndex, cellIndex);
+        if (listener != null) listener.onCardFlipped(cellIndex);
+        return true;
+    }
+
+    /**
+     * Checks to see if the current player has turned up two cards that match. If they do, it
+     * updates the score of the current player, sets the cards status' to matched and decrements
+     * the amount of pairs remaining.
+     * If the cards do not match the score is not increased and the cards are flipped back to face
+     * down.
+     * In both cases the current player is switched, and the game is checked to see if it is over.
+     * Does nothing unless two cards have been turned up.
+     */
+    void resolveTurn() {
+        if (!isCardTwoFlipped) return;
+
+        boolean isMatch = gameBoard.getColourIndex(cardOneIndex) == gameBoard.getColourIndex(cardTwoIndex);
+        if (isMatch) {
+            // The index is told first, as an index built lazily after a restore must see the pair unmatched
+            matchIndex.onPairMatched(cardOneIndex, cardTwoIndex);
+            gameBoard.setMatched(cardOneIndex, true);
+            gameBoard.setMatched(cardTwoIndex, true);
+            incrementScore(currentPlayerIndex);
+            pairsRemaining--;
+        } else {
+            gameBoard.flip(cardOneIndex);
+            gameBoard.flip(cardTwoIndex);
+        }
+        isCardOneFlipped = false;
+        isCardTwoFlipped = false;
+        turnCount++;
+        changeCurrentPlayer();
+
+        if (listener != null) listener.onTurnResolved(cardOneIndex, cardTwoIndex, isMatch);
+        checkIfGameIsOver();
+    }
+
+    /**
+     * Restore the state of a saved game, once its cards have been restored onto the board. Any
+     * cards turned up this turn must already be face up on the board. The number of players is
+     * the number of saved scores, and only holds for the restored game: the next new game has the
+     * number set with setPlayerCount. Which cards each player has seen is not saved, so the
+     * restored game's MatchIndex starts with only the cards turned up this turn seen, by the
+     * current player
+     * @param savedScores
+     * The score of each player, starting from player one, with one score for each player
+     * @param currentPlayerIndex
+     * The number of the player whose turn it is, starting from zero
+     * @param pairsRemaining
+     * The number of pairs yet to be matched
+     * @param turnCount
+     * The number of turns resolved so far
+     * @param firstCellIndex
+     * The position of the first card turned up this turn, or -1 if there is none
+     * @param secondCellIndex
+     * The position of the second card turned up this turn, or -1 if there is none
+     */
+    void restore(int[] savedScores, int currentPlayerIndex, int pairsRemaining, int turnCount,
+                 int firstCellIndex, int secondCellIndex) {
+        if (secondCellIndex >= 0 && firstCellIndex < 0) {
+            throw new IllegalArgumentException("A second card cannot be turned up without a first");
+        }
+        if (savedScores.length < 1 || savedScores.length > MAX_PLAYERS) {
+            throw new IllegalArgumentException("There must be between 1 and " + MAX_PLAYERS + " players");
+        }
+        if (currentPlayerIndex < 0 || currentPlayerIndex >= savedScores.length) {
+            throw new IllegalArgumentException("There is no player " + currentPlayerIndex);
+        }
+        playerCount = savedScores.length;
+        // Insert each player into the leaderboard, so players with the same score keep their order
+        for (int i = 0; i < playerCount; i++) {
+            scores[i] = savedScores[i];
+            int rank = i;
+            while (rank > 0 && scores[leaderboard[rank - 1]] < scores[i]) {
+                leaderboard[rank] = leaderboard[rank - 1];
+                rank--;
+            }
+            leaderboard[rank] = i;
+        }
+        this.currentPlayerIndex = currentPlayerIndex;
+        this.pairsRemaining = pairsRemaining;
+        this.turnCount = turnCount;
+
+        isCardOneFlipped = firstCellIndex >= 0;
+        isCardTwoFlipped = secondCellIndex >= 0;
+        cardOneIndex = firstCellIndex;
+        cardTwoIndex = secondCellIndex;
+        matchIndex.reset(gameBoard, playerCount);
+        if (isCardOneFlipped) matchIndex.onCardRevealed(currentPlayerIndex, firstCellIndex);
+        if (isCardTwoFlipped) matchIndex.onCardRevealed(currentPlayerIndex, secondCellIndex);
+    }
+
+    /**
+     * Add one to a player's score, moving them up the leaderboard past any players they have
+     * overtaken. Only players who had the player's old score can be overtaken, so this moves the
+     * player at most to the top of that group
+     */
+    private void incrementScore(int playerIndex) {
+        int score = ++scores[playerIndex];
+        int rank = 0;
+        while (leaderboard[rank] != playerIndex) rank++;
+        while (rank > 0 && scores[leaderboard[rank - 1]] < score) {
+            leaderboard[rank] = leaderboard[rank - 1];
+            rank--;
+        }
+        leaderboard[rank] = playerIndex;
+    }
+
+    /**
+     * Passes the turn to the next player, going back to player one after the last player
+     */
+    private void changeCurrentPlayer() {
+        if (++currentPlayerIndex == playerCount) currentPlayerIndex = 0;
+    }
+
+    /**
+     * Checks if the game is over (there are no more card pairs left unmatched), and if so tells
+     * the listener which player won, if any. The leader is the top of the leaderboard, and the
+     * game is a draw if the next player has the same score
+     */
+    private void checkIfGameIsOver() {
+
+        if (pairsRemaining == 0 && listener != null) {
+            Player winningPlayer = players[leaderboard[0]];
+            if (playerCount > 1 && scores[leaderboard[1]] == scores[leaderboard[0]]) {
+                winningPlayer = null;
+            }
+            listener.onGameOver(winningPlayer);
+        }
+    }
+
+    /**
+     * Are both cards of the current turn face up and waiting for resolveTurn
+     * @return
+     * True if the turn is waiting to be resolved, false otherwise
+     */
+    boolean isTurnPending() {
+        return isCardTwoFlipped;
+    }
+
+    /**
+     * Get the first card turned up this turn
+     * @return
+     * The position of the card, or -1 if no card has been turned up yet
+     */
+    int getFirstCellIndex() {
+        return isCardOneFlipped ? cardOneIndex : -1;
+    }
+
+    /**
+     * Get the second card turned up this turn
+     * @return
+     * The position of the card, or -1 if the second card has not been turned up yet
+     */
+    int getSecondCellIndex() {
+        return isCardTwoFlipped ? cardTwoIndex : -1;
+    }
+
+    /**
+     * Has every pair been matched
+     * @return
+     * True if the game is over, false otherwise
+     */
+    boolean isGameOver() {
+        return pairsRemaining == 0;
+    }
+
+    /**
+     * Get the board the current game is being played on
+     * @return
+     * The game board
+     */
+    GameBoard getGameBoard() {
+        return gameBoard;
+    }
+
+    /**
+     * Get the index of the unmatched cards and the cards each player has seen, to find hints and
+     * computer players' moves in constant time
+     * @return
+     * The match index, kept up to date as the game is played
+     */
+    MatchIndex getMatchIndex() {
+        return matchIndex;
+    }
+
+    /**
+     * Get the number of players in the current game
+     * @return
+     * The number of players
+     */
+    int getPlayerCount() {
+        return playerCount;
+    }
+
+    /**
+     * Get a player in the current game
+     * @param playerIndex
+     * The number of the player, from zero for player one to getPlayerCount - 1
+     * @return
+     * The player
+     */
+    Player getPlayer(int playerIndex) {
+        if (playerIndex < 0 || playerIndex >= playerCount) {
+            throw new IndexOutOfBoundsException("There is no player " + playerIndex);
+        }
+        return players[playerIndex];
+    }
+
+    /**
+     * Get a player by their place on the leaderboard. Players with the same score are placed in
+     * the order they reached it
+     * @param rank
+     * The place on the leaderboard, from zero for the leader to getPlayerCount - 1
+     * @return
+     * The player
+     */
+    Player getRankedPlayer(int rank) {
+        if (rank < 0 || rank >= playerCount) {
+            throw new IndexOutOfBoundsException("There is no place " + rank);
+        }
+        return players[leaderboard[rank]];
+    }
+
+    /**
+     * Get the player whose turn it is
+     * @return
+     * The current player
+     */
+    Player getCurrentPlayer() {
+        return players[currentPlayerIndex];
+    }
+
+    /**
+     * Get the number of the player whose turn it is
+     * @return
+     * The number of the player, from zero for player one
+     */
+    int getCurrentPlayerIndex() {
+        return currentPlayerIndex;
+    }
+
+    /**
+     * Get the number of turns resolved so far in the current game, whether or not they matched
+     * @return
+     * The number of turns
+     */
+    int getTurnCount() {
+        return turnCount;
+    }
+
+    /**
+     * Get the number of pairs that are yet to be matched
+     * @return
+     * The number of pairs remaining
+     */
+    int getPairsRemaining() {
+        return pairsRemaining;
+    }
+}
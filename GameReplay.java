@@ -0,0 +1,112 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Replays a journaled game move by move, and can jump to the state of the game after any move.
+ * The whole game is replayed once when the replay is created, saving the state of the game every
+ * SNAPSHOT_INTERVAL moves. Seeking then restores the nearest saved state before the move and
+ * replays at most SNAPSHOT_INTERVAL - 1 moves from there, rather than replaying from the start
+ */
+class GameReplay {
+
+    static final int SNAPSHOT_INTERVAL = 64;
+
+    private final MoveJournal moveJournal;
+    private final GameEngine gameEngine;
+    private final byte[][] snapshots;
+    private int currentMove;
+
+    /**
+     * Prepare a replay of a journaled game, leaving it at the start of the game
+     * @param moveJournal
+     * The journal of the game
+     * @throws IllegalStateException
+     * If a journaled move cannot be played, meaning the journal does not belong to its board
+     */
+    GameReplay(MoveJournal moveJournal) {
+        this.moveJournal = moveJournal;
+        gameEngine = new GameEngine(2, 1);
+        snapshots = new byte[moveJournal.getMoveCount() / SNAPSHOT_INTERVAL + 1][];
+
+        moveJournal.startGame(gameEngine);
+        for (int move = 0; move < moveJournal.getMoveCount(); move++) {
+            if (move % SNAPSHOT_INTERVAL == 0) snapshots[move / SNAPSHOT_INTERVAL] = GameStateCodec.encode(gameEngine);
+            playMove(move);
+        }
+        currentMove = moveJournal.getMoveCount();
+        if (moveJournal.getMoveCount() % SNAPSHOT_INTERVAL == 0) {
+            snapshots[snapshots.length - 1] = GameStateCodec.encode(gameEngine);
+        }
+        seek(0);
+    }
+
+    /**
+     * Move the replay to the state of the game after the given number of moves. If the last of
+     * those moves was the second card of a turn, both cards are still face up and the turn is
+     * resolved by the next move
+     * @param move
+     * The number of moves to have been played, from zero to getMoveCount
+     */
+    void seek(int move) {
+        if (move < 0 || move > moveJournal.getMoveCount()) {
+            throw new IndexOutOfBoundsException("Move " + move + " of " + moveJournal.getMoveCount());
+        }
+        if (move < currentMove || move - currentMove >= SNAPSHOT_INTERVAL) {
+            int snapshot = move / SNAPSHOT_INTERVAL;
+            GameStateCodec.decode(ByteBuffer.wrap(snapshots[snapshot]), gameEngine);
+            currentMove = snapshot * SNAPSHOT_INTERVAL;
+        }
+        while (currentMove < move) {
+            playMove(currentMove++);
+        }
+    }
+
+    /**
+     * Play the next move, if there is one
+     * @return
+     * True if a move was played, false if the replay is at the end of the game
+     */
+    boolean step() {
+        if (currentMove == moveJournal.getMoveCount()) return false;
+        playMove(currentMove++);
+        return true;
+    }
+
+    /**
+     * Turn up the card of a journaled move, first resolving the previous turn if both of its cards
+     * are face up
+     */
+    private void playMove(int move) {
+        if (gameEngine.isTurnPending()) gameEngine.resolveTurn();
+        if (!gameEngine.flip(moveJournal.getCellIndex(move))) {
+            throw new IllegalStateException("Move " + move + " cannot be played on the journaled board");
+        }
+    }
+
+    /**
+     * Get the number of moves played so far in the replay
+     * @return
+     * The current move
+     */
+    int getCurrentMove() {
+        return currentMove;
+    }
+
+    /**
+     * Get the number of moves in the journaled game
+     * @return
+     * The number of moves
+     */
+    int getMoveCount() {
+        return moveJournal.getMoveCount();
+    }
+
+    /**
+     * Get the game being replayed, in its state at the current move. It must not be played on
+     * directly
+     * @return
+     * The game engine
+     */
+    GameEngine getGameEngine() {
+        return gameEngine;
+    }
+}
@@ -0,0 +1,226 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Saves and restores the state of a game in a compact binary form, so a game can survive the
+ * process being killed. The format is
+ * - a header: magic number, version, columns, rows, the number of bits per colour and the
+ * number of players
+ * - each player's score, the current player, the pairs remaining and the turns played
+ * - the first and second card turned up this turn, or -1
+ * - each card's colour index, packed with only as many bits as the board's colours need: 3 bits
+ * for the eight colours of a four by four board, up to 5 bits for GameBoard.MAX_COLOURS
+ * - a bitset of the face up cards and a bitset of the matched cards
+ * A 64 by 64 board takes a little over 3.5KB. Version 1, which always had two players and no
+ * player count, and version 2, which did not count the turns played, can still be read. Their
+ * turns are counted from zero
+ */
+final class GameStateCodec {
+
+    private static final short MAGIC = 0x4D47;
+    private static final byte VERSION = 3;
+    private static final int HEADER_SIZE = 2 + 1 + 2 + 2 + 1 + 1 + 1 + 4 + 4 + 4 + 4;
+
+    /**
+     * The most cards a saved game may have. A bigger board is treated as corrupt rather than
+     * allocated
+     */
+    static final int MAX_CARDS = 512 * 512;
+
+    /**
+     * The most bytes a saved game of at most MAX_CARDS cards can take
+     */
+    static final int MAX_ENCODED_SIZE = HEADER_SIZE + 4 * GameEngine.MAX_PLAYERS
+            + bytesFor(MAX_CARDS * bitsPerColour(GameBoard.MAX_COLOURS)) + 2 * bytesFor(MAX_CARDS);
+
+    private GameStateCodec() {
+    }
+
+    /**
+     * Calculate the number of bytes needed to save a game
+     * @param gameEngine
+     * The game to be saved
+     * @return
+     * The size of the saved game in bytes
+     */
+    static int encodedSize(GameEngine gameEngine) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        int cards = gameBoard.getCardCount();
+        return HEADER_SIZE + 4 * gameEngine.getPlayerCount()
+                + bytesFor(cards * bitsPerColour(gameBoard.getColourCount())) + 2 * bytesFor(cards);
+    }
+
+    /**
+     * Save the state of a game
+     * @param gameEngine
+     * The game to be saved
+     * @return
+     * The saved game
+     */
+    static byte[] encode(GameEngine gameEngine) {
+        ByteBuffer out = ByteBuffer.allocate(encodedSize(gameEngine));
+        encode(gameEngine, out);
+        return out.array();
+    }
+
+    /**
+     * Save the state of a game into a buffer, starting at the buffer's position
+     * @param gameEngine
+     * The game to be saved
+     * @param out
+     * The buffer, with at least encodedSize bytes remaining
+     */
+    static void encode(GameEngine gameEngine, ByteBuffer out) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        int cards = gameBoard.getCardCount();
+        int bitsPerColour = bitsPerColour(gameBoard.getColourCount());
+
+        out.putShort(MAGIC);
+        out.put(VERSION);
+        out.putShort((short) gameBoard.getColumns());
+        out.putShort((short) gameBoard.getRows());
+        out.put((byte) bitsPerColour);
+        out.put((byte) gameEngine.getPlayerCount());
+        for (int i = 0; i < gameEngine.getPlayerCount(); i++) {
+            out.putInt(gameEngine.getPlayer(i).getCurrentScore());
+        }
+        out.put((byte) gameEngine.getCurrentPlayerIndex());
+        out.putInt(gameEngine.getPairsRemaining());
+        out.putInt(gameEngine.getTurnCount());
+        out.putInt(gameEngine.getFirstCellIndex());
+        out.putInt(gameEngine.getSecondCellIndex());
+
+        int bits = 0;
+        int pendingBits = 0;
+        for (int i = 0; i < cards; i++) {
+            bits |= gameBoard.getColourIndex(i) << pendingBits;
+            pendingBits += bitsPerColour;
+            while (pendingBits >= 8) {
+                out.put((byte) bits);
+                bits >>>= 8;
+                pendingBits -= 8;
+            }
+        }
+        if (pendingBits > 0) out.put((byte) bits);
+
+        bits = 0;
+        for (int i = 0; i < cards; i++) {
+            if (gameBoard.isFaceUp(i)) bits |= 1 << (i & 7);
+            if ((i & 7) == 7 || i == cards - 1) {
+                out.put((byte) bits);
+                bits = 0;
+            }
+        }
+        for (int i = 0; i < cards; i++) {
+            if (gameBoard.isMatched(i)) bits |= 1 << (i & 7);
+            if ((i & 7) == 7 || i == cards - 1) {
+                out.put((byte) bits);
+                bits = 0;
+            }
+        }
+    }
+
+    /**
+     * Restore a saved game into a game engine, replacing the engine's current game. The engine's
+     * board is reused if it has the saved dimensions
+     * @param in
+     * The buffer holding the saved game, starting at the buffer's position
+     * @param gameEngine
+     * The engine to restore the game into
+     * @throws IllegalArgumentException
+     * If the buffer does not hold a saved game of a version that can be read, or the cards it has
+     * turned up this turn are not face up and unmatched
+     */
+    static void decode(ByteBuffer in, GameEngine gameEngine) {
+        try {
+            if (in.getShort() != MAGIC) throw new IllegalArgumentException("Not a saved game");
+            int version = in.get();
+            if (version < 1 || version > VERSION) {
+                throw new IllegalArgumentException("Saved game version " + version + " cannot be read");
+            }
+            int columns = in.getShort();
+            int rows = in.getShort();
+            int bitsPerColour = in.get();
+            int playerCount = version == 1 ? 2 : in.get();
+            if (playerCount < 1 || playerCount > GameEngine.MAX_PLAYERS) {
+                throw new IllegalArgumentException("Saved game has " + playerCount + " players");
+            }
+            int[] scores = new int[playerCount];
+            for (int i = 0; i < playerCount; i++) {
+                scores[i] = in.getInt();
+            }
+            int currentPlayerIndex = in.get();
+            int pairsRemaining = in.getInt();
+            int turnCount = version < 3 ? 0 : in.getInt();
+            int firstCellIndex = in.getInt();
+            int secondCellIndex = in.getInt();
+
+            // Check the board is one the rest of the buffer can hold before it is allocated
+            GameBoard.checkDimensions(columns, rows);
+            if ((long) columns * rows > MAX_CARDS) {
+                throw new IllegalArgumentException("Saved game of " + columns + "x" + rows + " is too big");
+            }
+            int cards = columns * rows;
+            if (bitsPerColour != bitsPerColour(GameBoard.getColourCount(columns, rows))
+                    || firstCellIndex >= cards || secondCellIndex >= cards) {
+                throw new IllegalArgumentException("Saved game does not match its board");
+            }
+            if (in.remaining() < bytesFor(cards * bitsPerColour) + 2 * bytesFor(cards)) {
+                throw new IllegalArgumentException("Saved game is truncated");
+            }
+
+            // The saved player count is restored for this game only, see GameEngine.restore
+            gameEngine.newGame(columns, rows);
+            GameBoard gameBoard = gameEngine.getGameBoard();
+
+            int colourMask = (1 << bitsPerColour) - 1;
+            int bits = 0;
+            int pendingBits = 0;
+            for (int i = 0; i < cards; i++) {
+                while (pendingBits < bitsPerColour) {
+                    bits |= (in.get() & 0xFF) << pendingBits;
+                    pendingBits += 8;
+                }
+                gameBoard.setColourIndex(i, bits & colourMask);
+                bits >>>= bitsPerColour;
+                pendingBits -= bitsPerColour;
+            }
+
+            for (int i = 0; i < cards; i++) {
+                if ((i & 7) == 0) bits = in.get();
+                gameBoard.setFaceUp(i, (bits & (1 << (i & 7))) != 0);
+            }
+            for (int i = 0; i < cards; i++) {
+                if ((i & 7) == 0) bits = in.get();
+                gameBoard.setMatched(i, (bits & (1 << (i & 7))) != 0);
+            }
+
+            if (firstCellIndex >= 0 && firstCellIndex == secondCellIndex
+                    || !isTurnedUp(gameBoard, firstCellIndex) || !isTurnedUp(gameBoard, secondCellIndex)) {
+                throw new IllegalArgumentException("Saved game has turned up cards that are not face up and unmatched");
+            }
+
+            gameEngine.restore(scores, currentPlayerIndex, pairsRemaining, turnCount, firstCellIndex, secondCellIndex);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Saved game is truncated", e);
+        }
+    }
+
+    /**
+     * Check that a card saved as turned up this turn, if there is one, is face up and unmatched
+     */
+    private static boolean isTurnedUp(GameBoard gameBoard, int cellIndex) {
+        return cellIndex < 0 || gameBoard.isFaceUp(cellIndex) && !gameBoard.isMatched(cellIndex);
+    }
+
+    /**
+     * Calculate the number of bits needed to store the index of any of the given number of colours
+     */
+    private static int bitsPerColour(int colourCount) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(colourCount - 1));
+    }
+
+    private static int bytesFor(int bits) {
+        return (bits + 7) / 8;
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps the latest state of a game in a memory-mapped file, so the game can be recovered after the
+ * process is killed without saving its instance state. Saving writes the GameStateCodec form of the
+ * game straight into the mapped memory, with no system call or allocation while the board keeps
+ * the same size. The operating system writes the pages back to the file, so the state survives
+ * the process dying but is not forced to disk on every save
+ */
+class GameStateFile {
+
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Constructor
+     * @param file
+     * The file the game is kept in, created on the first save
+     */
+    GameStateFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Save the state of a game, replacing the state saved before
+     * @param gameEngine
+     * The game to be saved
+     * @throws IOException
+     * If the file cannot be created or mapped
+     */
+    void save(GameEngine gameEngine) throws IOException {
+        int size = GameStateCodec.encodedSize(gameEngine);
+        if (buffer == null || buffer.capacity() != size) map(size);
+
+        buffer.clear();
+        GameStateCodec.encode(gameEngine, buffer);
+    }
+
+    /**
+     * Restore the saved game, if there is one, into a game engine
+     * @param gameEngine
+     * The engine to restore the game into
+     * @return
+     * True if a game was restored, false if there is no saved game. If the saved game cannot be
+     * read false is returned and the engine should be given a new game
+     * @throws IOException
+     * If the file exists but cannot be mapped
+     */
+    boolean restore(GameEngine gameEngine) throws IOException {
+        if (!file.exists() || file.length() == 0) return false;
+        if (buffer == null || buffer.capacity() != file.length()) map((int) file.length());
+
+        buffer.clear();
+        try {
+            GameStateCodec.decode(buffer, gameEngine);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Unmap and close the file. It is reopened by the next save or restore
+     * @throws IOException
+     * If the file cannot be closed
+     */
+    void close() throws IOException {
+        buffer = null;
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
+    }
+
+    private void map(int size) throws IOException {
+        if (randomAccessFile == null) randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel channel = randomAccessFile.getChannel();
+        if (channel.size() != size) randomAccessFile.setLength(size);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+}
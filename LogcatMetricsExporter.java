@@ -0,0 +1,33 @@
+import android.util.Log;
+
+/**
+ * Exports metrics to logcat, one line for each counter and histogram
+ */
+class LogcatMetricsExporter implements MetricsExporter {
+
+    private final String tag;
+
+    /**
+     * Constructor
+     * @param tag
+     * The logcat tag the metrics are logged under
+     */
+    LogcatMetricsExporter(String tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public void exportCounter(String name, long value) {
+        Log.i(tag, name + " " + value);
+    }
+
+    @Override
+    public void exportHistogram(String name, MetricsHistogram histogram) {
+        Log.i(tag, name + " " + histogram);
+    }
+
+    @Override
+    public void flush() {
+        // Every line has already been logged
+    }
+}
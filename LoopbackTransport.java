@@ -0,0 +1,107 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Connects SyncClients to a SyncHost within one process, for tests and load testing without a
+ * network. Messages are queued rather than delivered as they are sent, so a client answering a
+ * move with a move of its own does not recurse into the host, and everything is delivered on the
+ * thread that calls pump, in the order it was sent
+ */
+class LoopbackTransport {
+
+    /**
+     * One end of a loopback connection. Messages sent on the client's end are delivered to the
+     * host, and messages sent on the host's end are delivered to the client
+     */
+    private class LoopbackConnection implements SyncConnection {
+        final SyncClient client;
+        LoopbackConnection peer;
+        boolean isClosed;
+
+        LoopbackConnection(SyncClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public void send(ByteBuffer message) {
+            if (isClosed) return;
+            byte[] copy = new byte[message.remaining()];
+            message.get(copy);
+            deliveries.add(new Delivery(peer, copy));
+        }
+
+        @Override
+        public void close() {
+            if (isClosed) return;
+            isClosed = true;
+            peer.isClosed = true;
+            deliveries.add(new Delivery(this, null));
+            deliveries.add(new Delivery(peer, null));
+        }
+    }
+
+    /**
+     * A message, or the closing of a connection if the message is null, waiting to be delivered
+     * to the given end of a connection
+     */
+    private static class Delivery {
+        final LoopbackConnection to;
+        final byte[] message;
+
+        Delivery(LoopbackConnection to, byte[] message) {
+            this.to = to;
+            this.message = message;
+        }
+    }
+
+    private final SyncHost syncHost;
+    private final ArrayDeque<Delivery> deliveries = new ArrayDeque<>();
+
+    /**
+     * Constructor
+     * @param syncHost
+     * The host every client is connected to
+     */
+    LoopbackTransport(SyncHost syncHost) {
+        this.syncHost = syncHost;
+    }
+
+    /**
+     * Connect a client to the host
+     * @param client
+     * The client to connect
+     * @return
+     * The client's end of the connection, which has also been given to the client
+     */
+    SyncConnection connect(SyncClient client) {
+        LoopbackConnection clientEnd = new LoopbackConnection(client);
+        LoopbackConnection hostEnd = new LoopbackConnection(null);
+        clientEnd.peer = hostEnd;
+        hostEnd.peer = clientEnd;
+        client.setConnection(clientEnd);
+        return clientEnd;
+    }
+
+    /**
+     * Deliver queued messages, including any sent while delivering them, until none are left
+     * @return
+     * The number of messages and closed connections delivered
+     */
+    int pump() {
+        int delivered = 0;
+        Delivery delivery;
+        while ((delivery = deliveries.poll()) != null) {
+            LoopbackConnection to = delivery.to;
+            if (delivery.message == null) {
+                if (to.client != null) to.client.onClosed();
+                else syncHost.onClosed(to);
+            } else if (!to.isClosed) {
+                ByteBuffer message = ByteBuffer.wrap(delivery.message);
+                if (to.client != null) to.client.onMessage(message);
+                else syncHost.onMessage(to, message);
+            }
+            delivered++;
+        }
+        return delivered;
+    }
+}
@@ -1,5 +1,4 @@
 
-import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.view.View;
@@ -7,17 +6,23 @@ import android.widget.Button;
 import android.widget.TextView;
 
 /**
- * Bootstraps the application
+ * Bootstraps the application, and shows the scores reported by the game's CustomView
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements CustomView.ScoreListener {
+
+    private static final char[] SCORE_SEPARATOR_TEXT = ": ".toCharArray();
+    private static final char[] PLAYER_SEPARATOR_TEXT = ". ".toCharArray();
+    private static final char[] CURRENT_PLAYER_TEXT = ".\nCurrentPlayer: ".toCharArray();
 
     private TextView scores;
+    private CustomView customView;
+    private char[] scoresText = new char[64];
 
     /**
      * Bootstraps the application, setting up the custom view for the game canvas, the TextView for
      * the player scores, and a button to reset the game.
-     * The reset button wipes the current state of the application and restarts the application
-     * entirely.
+     * The reset button starts a new game in place, reshuffling the existing board rather than
+     * restarting the application.
      * @param savedInstanceState
      * Passed in by the Android Framework
      */
@@ -27,25 +32,74 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         scores = findViewById(R.id.scores);
-        scores.setText("Player one: 0. Player two: 0. \nCurrent player: Player One");
+        customView = findViewById(R.id.customView);
+        customView.setScoreListener(this);
 
         Button resetGameButton = findViewById(R.id.resetButton);
         resetGameButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Intent i = getBaseContext().getPackageManager().getLaunchIntentForPackage(getBaseContext().getPackageName());
-                i.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                startActivity(i);
+                customView.resetGame();
             }
         });
     }
 
     /**
-     * Updates the text view containing the players scores and the player whose turn it is
-     * @param updateText
-     * The text to be displayed in the TextView scores
+     * Updates the text view containing the players scores, highest first, and the player whose turn
+     * it is. The text is written into the same char array every time, which the TextView displays
+     * directly, so nothing is allocated unless the players names need the array to grow
+     * @param gameEngine
+     * The game whose scores have changed
+     */
+    @Override
+    public void onScoreChanged(GameEngine gameEngine) {
+        int maxLength = CURRENT_PLAYER_TEXT.length + gameEngine.getCurrentPlayer().getPlayerId().length();
+        for (int i = 0; i < gameEngine.getPlayerCount(); i++) {
+            maxLength += gameEngine.getPlayer(i).getPlayerId().length() + SCORE_SEPARATOR_TEXT.length
+                    + 11 + PLAYER_SEPARATOR_TEXT.length;
+        }
+        if (scoresText.length < maxLength) scoresText = new char[maxLength];
+
+        int length = 0;
+        for (int rank = 0; rank < gameEngine.getPlayerCount(); rank++) {
+            Player player = gameEngine.getRankedPlayer(rank);
+            if (rank > 0) length = append(PLAYER_SEPARATOR_TEXT, length);
+            length = append(player.getPlayerId(), length);
+            length = append(SCORE_SEPARATOR_TEXT, length);
+            length = append(player.getCurrentScore(), length);
+        }
+        length = append(CURRENT_PLAYER_TEXT, length);
+        length = append(gameEngine.getCurrentPlayer().getPlayerId(), length);
+
+        scores.setText(scoresText, 0, length);
+    }
+
+    private int append(char[] text, int length) {
+        System.arraycopy(text, 0, scoresText, length, text.length);
+        return length + text.length;
+    }
+
+    private int append(String text, int length) {
+        text.getChars(0, text.length(), scoresText, length);
+        return length + text.length();
+    }
+
+    /**
+     * Write the decimal digits of a number into scoresText
      */
-    void update(String updateText) {
-        scores.setText(updateText);
+    private int append(int number, int length) {
+        if (number < 0) {
+            scoresText[length++] = '-';
+        }
+        long remaining = Math.abs((long) number);
+        int digits = 1;
+        for (long power = 10; power <= remaining; power *= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            scoresText[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return length + digits;
     }
 }
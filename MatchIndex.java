@@ -0,0 +1,348 @@
+import java.util.Random;
+
+/**
+ * Answers which cards match without comparing cards pairwise, for hints, auto-solving and computer
+ * controlled players. The index keeps the unmatched cards grouped by colour, and for each player
+ * the cards they have turned up, grouped the same way. Both are updated as cards are turned up and
+ * pairs are matched, so every question is answered in constant time however big the board is.
+ * The GameEngine keeps an index of its game up to date, in which a restored game starts with only
+ * the cards turned up this turn seen, and a perfect memory MemoryStrategy keeps its own index of
+ * every card it has been shown.
+ * Resetting the index only marks it as out of date, and it is rebuilt when the first card of the
+ * game is turned up or it is first asked a question, so restoring a saved game, which starts a new
+ * game and then replaces it, does not build the index twice
+ */
+class MatchIndex {
+
+    /**
+     * The cards one player has turned up and not yet seen matched. The cards of each colour are
+     * kept in a linked list through nextSeen and previousSeen, and the colours with at least two
+     * cards seen, which the player knows a pair of, in a set that can be added to, removed from
+     * and read in constant time. The cards the player has not turned up are kept in a similar set,
+     * so one can be picked at random without a scan
+     */
+    private static final class SeenCards {
+        final int[] unseenCells;
+        final int[] unseenPositions;
+        int unseenCount;
+
+        final int[] nextSeen;
+        final int[] previousSeen;
+        final int[] firstSeenOfColour;
+        final int[] seenCountOfColour;
+
+        final int[] knownPairColours;
+        final int[] knownPairPositions;
+        int knownPairCount;
+
+        SeenCards(int cardCount, int colourCount) {
+            unseenCells = new int[cardCount];
+            unseenPositions = new int[cardCount];
+            nextSeen = new int[cardCount];
+            previousSeen = new int[cardCount];
+            firstSeenOfColour = new int[colourCount];
+            seenCountOfColour = new int[colourCount];
+            knownPairColours = new int[colourCount];
+            knownPairPositions = new int[colourCount];
+        }
+
+        boolean fits(int cardCount, int colourCount) {
+            return unseenCells.length >= cardCount && firstSeenOfColour.length >= colourCount;
+        }
+
+        void reset(GameBoard gameBoard) {
+            unseenCount = 0;
+            for (int i = 0; i < gameBoard.getCardCount(); i++) {
+                if (gameBoard.isMatched(i)) {
+                    unseenPositions[i] = -1;
+                } else {
+                    unseenPositions[i] = unseenCount;
+                    unseenCells[unseenCount++] = i;
+                }
+            }
+            for (int colour = 0; colour < gameBoard.getColourCount(); colour++) {
+                firstSeenOfColour[colour] = -1;
+                seenCountOfColour[colour] = 0;
+            }
+            knownPairCount = 0;
+        }
+
+        void reveal(int cellIndex, int colourIndex) {
+            int position = unseenPositions[cellIndex];
+            if (position < 0) return;
+            removeUnseen(cellIndex, position);
+
+            int first = firstSeenOfColour[colourIndex];
+            nextSeen[cellIndex] = first;
+            previousSeen[cellIndex] = -1;
+            if (first >= 0) previousSeen[first] = cellIndex;
+            firstSeenOfColour[colourIndex] = cellIndex;
+            if (++seenCountOfColour[colourIndex] == 2) {
+                knownPairPositions[colourIndex] = knownPairCount;
+                knownPairColours[knownPairCount++] = colourIndex;
+            }
+        }
+
+        void remove(int cellIndex, int colourIndex) {
+            int position = unseenPositions[cellIndex];
+            if (position >= 0) {
+                removeUnseen(cellIndex, position);
+                return;
+            }
+
+            int next = nextSeen[cellIndex];
+            int previous = previousSeen[cellIndex];
+            if (previous >= 0) nextSeen[previous] = next;
+            else firstSeenOfColour[colourIndex] = next;
+            if (next >= 0) previousSeen[next] = previous;
+            if (--seenCountOfColour[colourIndex] == 1) {
+                int lastColour = knownPairColours[--knownPairCount];
+                int knownPosition = knownPairPositions[colourIndex];
+                knownPairColours[knownPosition] = lastColour;
+                knownPairPositions[lastColour] = knownPosition;
+            }
+        }
+
+        private void removeUnseen(int cellIndex, int position) {
+            int lastCell = unseenCells[--unseenCount];
+            unseenCells[position] = lastCell;
+            unseenPositions[lastCell] = position;
+            unseenPositions[cellIndex] = -1;
+        }
+    }
+
+    private GameBoard gameBoard;
+
+    /**
+     * The unmatched cards, grouped by colour. The cards of a colour start at colourStart and there
+     * are unmatchedCountOfColour of them, in no particular order
+     */
+    private int[] cellsByColour = new int[0];
+    private int[] cellPositions = new int[0];
+    private int[] colourStart = new int[0];
+    private int[] unmatchedCountOfColour = new int[0];
+
+    /**
+     * The colours that still have unmatched cards, so a pair can be found without visiting the
+     * colours that have been cleared
+     */
+    private int[] remainingColours = new int[0];
+    private int[] remainingPositions = new int[0];
+    private int remainingColourCount;
+
+    private final SeenCards[] seenCards = new SeenCards[GameEngine.MAX_PLAYERS];
+    private int playerCount;
+    private boolean isBuilt;
+
+    /**
+     * Start indexing a new or restored game, once its cards are on the board. Matched cards are
+     * left out, and no player has seen any card
+     * @param gameBoard
+     * The board the game is played on
+     * @param playerCount
+     * The number of players in the game
+     */
+    void reset(GameBoard gameBoard, int playerCount) {
+        this.gameBoard = gameBoard;
+        this.playerCount = playerCount;
+        isBuilt = false;
+    }
+
+    /**
+     * Build the index from the board if it has been reset since it was last built. The arrays are
+     * only reallocated if the board or the number of players has grown
+     */
+    private void build() {
+        if (isBuilt) return;
+        isBuilt = true;
+        int cardCount = gameBoard.getCardCount();
+        int colourCount = gameBoard.getColourCount();
+        if (cellsByColour.length < cardCount) {
+            cellsByColour = new int[cardCount];
+            cellPositions = new int[cardCount];
+        }
+        if (colourStart.length < colourCount) {
+            colourStart = new int[colourCount];
+            unmatchedCountOfColour = new int[colourCount];
+            remainingColours = new int[colourCount];
+            remainingPositions = new int[colourCount];
+        }
+
+        // Group the cards by colour with a counting sort: count each colour, then place each card
+        for (int colour = 0; colour < colourCount; colour++) {
+            unmatchedCountOfColour[colour] = 0;
+        }
+        for (int i = 0; i < cardCount; i++) {
+            unmatchedCountOfColour[gameBoard.getColourIndex(i)]++;
+        }
+        int start = 0;
+        for (int colour = 0; colour < colourCount; colour++) {
+            colourStart[colour] = start;
+            start += unmatchedCountOfColour[colour];
+            unmatchedCountOfColour[colour] = 0;
+        }
+        for (int i = 0; i < cardCount; i++) {
+            if (gameBoard.isMatched(i)) continue;
+            int colour = gameBoard.getColourIndex(i);
+            int position = colourStart[colour] + unmatchedCountOfColour[colour]++;
+            cellsByColour[position] = i;
+            cellPositions[i] = position;
+        }
+        remainingColourCount = 0;
+        for (int colour = 0; colour < colourCount; colour++) {
+            if (unmatchedCountOfColour[colour] == 0) continue;
+            remainingPositions[colour] = remainingColourCount;
+            remainingColours[remainingColourCount++] = colour;
+        }
+
+        for (int player = 0; player < playerCount; player++) {
+            if (seenCards[player] == null || !seenCards[player].fits(cardCount, colourCount)) {
+                seenCards[player] = new SeenCards(cardCount, colourCount);
+            }
+            seenCards[player].reset(gameBoard);
+        }
+    }
+
+    /**
+     * A player has turned a card face up, so they have now seen its colour
+     * @param playerIndex
+     * The number of the player who turned the card up
+     * @param cellIndex
+     * The position of the card on the board
+     */
+    void onCardRevealed(int playerIndex, int cellIndex) {
+        build();
+        seenCards[playerIndex].reveal(cellIndex, gameBoard.getColourIndex(cellIndex));
+    }
+
+    /**
+     * Two cards are being matched, so they are removed from the index and every player's cards.
+     * This must be called before the cards are marked as matched on the board, as an index that
+     * has not been built since it was reset is built here from the board's unmatched cards
+     * @param firstCellIndex
+     * The position of one card of the pair
+     * @param secondCellIndex
+     * The position of the other card of the pair
+     */
+    void onPairMatched(int firstCellIndex, int secondCellIndex) {
+        build();
+        removeUnmatched(firstCellIndex);
+        removeUnmatched(secondCellIndex);
+    }
+
+    private void removeUnmatched(int cellIndex) {
+        int colour = gameBoard.getColourIndex(cellIndex);
+        int lastPosition = colourStart[colour] + --unmatchedCountOfColour[colour];
+        int lastCell = cellsByColour[lastPosition];
+        int position = cellPositions[cellIndex];
+        cellsByColour[position] = lastCell;
+        cellPositions[lastCell] = position;
+
+        if (unmatchedCountOfColour[colour] == 0) {
+            int lastColour = remainingColours[--remainingColourCount];
+            int remainingPosition = remainingPositions[colour];
+            remainingColours[remainingPosition] = lastColour;
+            remainingPositions[lastColour] = remainingPosition;
+        }
+        for (int player = 0; player < playerCount; player++) {
+            seenCards[player].remove(cellIndex, colour);
+        }
+    }
+
+    /**
+     * Find a card of any unmatched pair, whether or not anyone has seen it, for auto-solving
+     * @return
+     * The position of the card, whose partner is found with findPartner, or -1 if every pair has
+     * been matched
+     */
+    int findPair() {
+        build();
+        if (remainingColourCount == 0) return -1;
+        return cellsByColour[colourStart[remainingColours[0]]];
+    }
+
+    /**
+     * Find an unmatched card with the same colour as a given card, whether or not anyone has seen it
+     * @param cellIndex
+     * The position of an unmatched card
+     * @return
+     * The position of a different card it matches
+     */
+    int findPartner(int cellIndex) {
+        build();
+        int start = colourStart[gameBoard.getColourIndex(cellIndex)];
+        int partner = cellsByColour[start];
+        return partner != cellIndex ? partner : cellsByColour[start + 1];
+    }
+
+    /**
+     * Find a card of a pair a player has seen both cards of, to hint at
+     * @param playerIndex
+     * The number of the player
+     * @return
+     * The position of the card, whose partner is found with findKnownPartner, or -1 if the player
+     * has not seen both cards of any unmatched pair
+     */
+    int findKnownPair(int playerIndex) {
+        build();
+        SeenCards seen = seenCards[playerIndex];
+        if (seen.knownPairCount == 0) return -1;
+        return seen.firstSeenOfColour[seen.knownPairColours[0]];
+    }
+
+    /**
+     * Find a card a player has seen with the same colour as a given card
+     * @param playerIndex
+     * The number of the player
+     * @param cellIndex
+     * The position of an unmatched card
+     * @return
+     * The position of a different card, seen by the player, that it matches, or -1 if the player
+     * has not seen one
+     */
+    int findKnownPartner(int playerIndex, int cellIndex) {
+        build();
+        SeenCards seen = seenCards[playerIndex];
+        int partner = seen.firstSeenOfColour[gameBoard.getColourIndex(cellIndex)];
+        if (partner == cellIndex) partner = seen.nextSeen[partner];
+        return partner;
+    }
+
+    /**
+     * Check if a player has seen the colour of a card
+     * @param playerIndex
+     * The number of the player
+     * @param cellIndex
+     * The position of an unmatched card
+     * @return
+     * True if the player has turned the card up, false otherwise
+     */
+    boolean hasSeen(int playerIndex, int cellIndex) {
+        build();
+        return seenCards[playerIndex].unseenPositions[cellIndex] < 0;
+    }
+
+    /**
+     * Choose a card for a computer controlled player who remembers every card they have turned up.
+     * For their first card they turn up a pair they know if they know one, and for their second
+     * card the first card's partner if they have seen it. Otherwise they turn up a card they have
+     * not seen, chosen at random
+     * @param playerIndex
+     * The number of the player
+     * @param firstCellIndex
+     * The position of the card already turned up this turn, or -1 to choose the first card
+     * @param random
+     * The source of randomness for the choice
+     * @return
+     * The position of a face down, unmatched card
+     */
+    int chooseCard(int playerIndex, int firstCellIndex, Random random) {
+        build();
+        SeenCards seen = seenCards[playerIndex];
+        int choice = firstCellIndex < 0 ? findKnownPair(playerIndex) : findKnownPartner(playerIndex, firstCellIndex);
+        if (choice >= 0) return choice;
+        if (seen.unseenCount > 0) return seen.unseenCells[random.nextInt(seen.unseenCount)];
+        // Only reached if the player has seen every card, in which case the partner is known
+        return firstCellIndex < 0 ? findPair() : findPartner(firstCellIndex);
+    }
+}
@@ -0,0 +1,196 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Checks the MatchIndex against the board it indexes, by playing random games and comparing every
+ * answer the index gives with a scan of the board. Games are also saved part way through a turn
+ * and restored into a new engine, including with a matched pair face up and waiting to be
+ * resolved, since a restored index is only built once it is first used. Then two perfect memory
+ * MemoryStrategy players, which choose their moves from their own index, play each other and every
+ * move is checked against a record of the cards they have been shown. Run from the command line;
+ * a failed check throws an IllegalStateException
+ */
+class MatchIndexTest {
+
+    /**
+     * Runs every check and prints how many games were played
+     * @param args
+     * [games], defaulting to 2000
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Random random = new Random(1);
+        for (int game = 0; game < games; game++) {
+            int columns = 2 + 2 * random.nextInt(4);
+            int rows = 1 + random.nextInt(6);
+            playGame(columns, rows, random.nextLong(), random);
+        }
+        restorePendingMatch(games, random);
+        for (int game = 0; game < games; game++) {
+            int columns = 2 + 2 * random.nextInt(4);
+            int rows = 1 + random.nextInt(6);
+            playPerfectMemory(columns, rows, random.nextLong(), random);
+        }
+        System.out.println("MatchIndexTest: " + games + " random games, " + games + " restored matches and "
+                + games + " perfect memory games passed");
+    }
+
+    /**
+     * Play a game of random moves, checking the index after every move and sometimes swapping the
+     * game for a copy restored from its saved state
+     */
+    private static void playGame(int columns, int rows, long seed, Random random) {
+        GameEngine gameEngine = new GameEngine(columns, rows, new Random());
+        gameEngine.newGame(columns, rows, seed);
+        while (!gameEngine.isGameOver()) {
+            if (random.nextInt(8) == 0) gameEngine = restoredCopy(gameEngine);
+            int cellIndex = random.nextInt(2) == 0
+                    ? gameEngine.getMatchIndex().chooseCard(gameEngine.getCurrentPlayerIndex(), firstCell(gameEngine), random)
+                    : RandomStrategy.chooseFaceDownCard(gameEngine.getGameBoard(), random);
+            check(gameEngine.flip(cellIndex), "the card chosen could not be turned up");
+            if (random.nextInt(8) == 0) gameEngine = restoredCopy(gameEngine);
+            if (gameEngine.isTurnPending()) gameEngine.resolveTurn();
+            checkIndex(gameEngine);
+        }
+        check(gameEngine.getMatchIndex().findPair() == -1, "a pair was found after the game was over");
+    }
+
+    /**
+     * Restore games saved with a matched pair face up, then resolve the turn
+     */
+    private static void restorePendingMatch(int games, Random random) {
+        for (int game = 0; game < games; game++) {
+            GameEngine gameEngine = new GameEngine(4, 4, new Random());
+            gameEngine.newGame(4, 4, random.nextLong());
+            int first = gameEngine.getMatchIndex().findPair();
+            int second = gameEngine.getMatchIndex().findPartner(first);
+            gameEngine.flip(first);
+            gameEngine.flip(second);
+
+            GameEngine restored = restoredCopy(gameEngine);
+            restored.resolveTurn();
+            check(restored.getGameBoard().isMatched(first), "the restored pair was not matched");
+            checkIndex(restored);
+        }
+    }
+
+    /**
+     * Play a game between two perfect memory players, checking that each move is the one a player
+     * who forgets nothing makes: a pair both cards of which have been shown, the partner of the
+     * first card if it has been shown, and otherwise a card never shown. Every turn that does not
+     * match a pair shows two new cards, so the game takes at most two turns for each pair
+     */
+    private static void playPerfectMemory(int columns, int rows, long seed, Random random) {
+        GameEngine gameEngine = new GameEngine(columns, rows, new Random());
+        gameEngine.newGame(columns, rows, seed);
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        PlayerStrategy[] players = { new MemoryStrategy(1), new MemoryStrategy(1) };
+        for (PlayerStrategy player : players) {
+            player.newGame(gameBoard);
+        }
+        boolean[] isShown = new boolean[gameBoard.getCardCount()];
+        int turns = 0;
+        while (!gameEngine.isGameOver()) {
+            PlayerStrategy player = players[gameEngine.getCurrentPlayerIndex()];
+            int firstCard = player.chooseFirstCard(gameBoard, random);
+            int shownPair = findShownPartner(gameBoard, isShown, -1);
+            if (shownPair >= 0) {
+                check(isShown[firstCard] && findShownPartner(gameBoard, isShown, firstCard) >= 0, "a pair that was shown was not chosen");
+            } else {
+                check(!isShown[firstCard], "a card that was shown was chosen with no pair known");
+            }
+            check(gameEngine.flip(firstCard), "the first card chosen could not be turned up");
+            showCard(players, gameBoard, isShown, firstCard, turns);
+
+            int secondCard = player.chooseSecondCard(gameBoard, firstCard, random);
+            if (findShownPartner(gameBoard, isShown, firstCard) >= 0) {
+                check(secondCard != firstCard && isShown[secondCard]
+                        && gameBoard.getColourIndex(secondCard) == gameBoard.getColourIndex(firstCard), "a partner that was shown was not chosen");
+            } else {
+                check(!isShown[secondCard], "a card that was shown was chosen with no partner known");
+            }
+            check(gameEngine.flip(secondCard), "the second card chosen could not be turned up");
+            showCard(players, gameBoard, isShown, secondCard, turns);
+            if (gameBoard.getColourIndex(firstCard) == gameBoard.getColourIndex(secondCard)) {
+                for (PlayerStrategy shownPlayer : players) {
+                    shownPlayer.onPairMatched(firstCard, secondCard);
+                }
+            }
+            gameEngine.resolveTurn();
+            turns++;
+        }
+        check(turns <= gameBoard.getCardCount(), "a perfect memory game took " + turns + " turns");
+    }
+
+    private static void showCard(PlayerStrategy[] players, GameBoard gameBoard, boolean[] isShown, int cellIndex, int turn) {
+        isShown[cellIndex] = true;
+        for (PlayerStrategy player : players) {
+            player.onCardRevealed(cellIndex, gameBoard.getColourIndex(cellIndex), turn);
+        }
+    }
+
+    /**
+     * Find an unmatched card that has been shown, with the same colour as a given card, or that
+     * has a shown partner if no card is given, by scanning the board
+     */
+    private static int findShownPartner(GameBoard gameBoard, boolean[] isShown, int cellIndex) {
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (!isShown[i] || gameBoard.isMatched(i) || i == cellIndex) continue;
+            if (cellIndex >= 0) {
+                if (gameBoard.getColourIndex(i) == gameBoard.getColourIndex(cellIndex)) return i;
+            } else if (findShownPartner(gameBoard, isShown, i) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static GameEngine restoredCopy(GameEngine gameEngine) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        GameEngine restored = new GameEngine(gameBoard.getColumns(), gameBoard.getRows(), new Random());
+        GameStateCodec.decode(ByteBuffer.wrap(GameStateCodec.encode(gameEngine)), restored);
+        return restored;
+    }
+
+    private static int firstCell(GameEngine gameEngine) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (gameBoard.isFaceUp(i) && !gameBoard.isMatched(i)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Compare the index's answers with the board: every pair and partner found must be unmatched
+     * and the same colour, and a pair must be found exactly when there are pairs left
+     */
+    private static void checkIndex(GameEngine gameEngine) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        MatchIndex matchIndex = gameEngine.getMatchIndex();
+        int pair = matchIndex.findPair();
+        check((pair >= 0) == (gameEngine.getPairsRemaining() > 0), "findPair disagrees with the pairs remaining");
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (gameBoard.isMatched(i)) continue;
+            int partner = matchIndex.findPartner(i);
+            check(partner != i && !gameBoard.isMatched(partner), "findPartner returned a matched card or itself");
+            check(gameBoard.getColourIndex(partner) == gameBoard.getColourIndex(i), "findPartner returned another colour");
+            for (int player = 0; player < gameEngine.getPlayerCount(); player++) {
+                int knownPartner = matchIndex.findKnownPartner(player, i);
+                if (knownPartner < 0) continue;
+                check(matchIndex.hasSeen(player, knownPartner), "findKnownPartner returned a card not seen");
+                check(!gameBoard.isMatched(knownPartner), "findKnownPartner returned a matched card");
+                check(gameBoard.getColourIndex(knownPartner) == gameBoard.getColourIndex(i), "findKnownPartner returned another colour");
+            }
+        }
+        for (int player = 0; player < gameEngine.getPlayerCount(); player++) {
+            int known = matchIndex.findKnownPair(player);
+            if (known < 0) continue;
+            check(matchIndex.hasSeen(player, known) && !gameBoard.isMatched(known), "findKnownPair returned a card not seen or matched");
+            check(matchIndex.findKnownPartner(player, known) >= 0, "findKnownPair returned a card with no known partner");
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new IllegalStateException(message);
+    }
+}
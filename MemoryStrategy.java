@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A player who remembers the cards that have been turned up. If they remember both cards of a
+ * pair they turn them up, otherwise they turn up a card they have not seen, and pick its partner
+ * if they remember where it is.
+ * How well they remember is set by the retention, the chance that a remembered card is still
+ * remembered one turn later. A retention of 1 gives a perfect memory, lower values give a memory
+ * that decays over time, so that older cards are more likely to have been forgotten.
+ * A perfect memory is kept in a MatchIndex of the cards seen, so each move is chosen in constant
+ * time. A memory that decays has to decide card by card what has been forgotten, so it scans the
+ * board for each move.
+ */
+class MemoryStrategy implements PlayerStrategy {
+
+    private final double retention;
+
+    /**
+     * The cards seen, if the memory is perfect, or null if it decays
+     */
+    private final MatchIndex matchIndex;
+
+    /**
+     * The turn at which each card was last known to be remembered, or -1 if it is not
+     */
+    private int[] rememberedAt = new int[0];
+    private int[] rememberedCardOfColour = new int[0];
+    private int currentTurn;
+
+    /**
+     * Constructor
+     * @param retention
+     * The chance, between 0 and 1, that a remembered card is still remembered a turn later
+     */
+    MemoryStrategy(double retention) {
+        if (retention < 0 || retention > 1) {
+            throw new IllegalArgumentException("Retention must be between 0 and 1, was " + retention);
+        }
+        this.retention = retention;
+        matchIndex = retention == 1 ? new MatchIndex() : null;
+    }
+
+    /**
+     * Create a factory for players with the given retention
+     * @param retention
+     * The chance, between 0 and 1, that a remembered card is still remembered a turn later
+     * @return
+     * A factory creating a new MemoryStrategy for each thread
+     */
+    static PlayerStrategy.Factory factory(final double retention) {
+        return new PlayerStrategy.Factory() {
+            @Override
+            public PlayerStrategy create() {
+                return new MemoryStrategy(retention);
+            }
+        };
+    }
+
+    @Override
+    public void newGame(GameBoard gameBoard) {
+        if (matchIndex != null) {
+            matchIndex.reset(gameBoard, 1);
+            return;
+        }
+        if (rememberedAt.length != gameBoard.getCardCount()) {
+            rememberedAt = new int[gameBoard.getCardCount()];
+        }
+        if (rememberedCardOfColour.length != gameBoard.getColourCount()) {
+            rememberedCardOfColour = new int[gameBoard.getColourCount()];
+        }
+        Arrays.fill(rememberedAt, -1);
+        currentTurn = 0;
+    }
+
+    @Override
+    public void onCardRevealed(int cellIndex, int colourIndex, int turn) {
+        if (matchIndex != null) {
+            matchIndex.onCardRevealed(0, cellIndex);
+            return;
+        }
+        rememberedAt[cellIndex] = turn;
+        currentTurn = turn;
+    }
+
+    @Override
+    public void onPairMatched(int firstCellIndex, int secondCellIndex) {
+        if (matchIndex != null) matchIndex.onPairMatched(firstCellIndex, secondCellIndex);
+    }
+
+    /**
+     * Turn up both cards of a remembered pair if there is one, otherwise a card not seen before
+     */
+    @Override
+    public int chooseFirstCard(GameBoard gameBoard, Random random) {
+        if (matchIndex != null) return matchIndex.chooseCard(0, -1, random);
+        Arrays.fill(rememberedCardOfColour, -1);
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (gameBoard.isMatched(i) || !remembers(i, random)) continue;
+
+            int colourIndex = gameBoard.getColourIndex(i);
+            if (rememberedCardOfColour[colourIndex] >= 0) return rememberedCardOfColour[colourIndex];
+            rememberedCardOfColour[colourIndex] = i;
+        }
+        return chooseUnseenCard(gameBoard, random);
+    }
+
+    /**
+     * Turn up a remembered card with the same colour as the first card if there is one, otherwise
+     * a card not seen before
+     */
+    @Override
+    public int chooseSecondCard(GameBoard gameBoard, int firstCellIndex, Random random) {
+        if (matchIndex != null) return matchIndex.chooseCard(0, firstCellIndex, random);
+        int colourIndex = gameBoard.getColourIndex(firstCellIndex);
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (i == firstCellIndex || gameBoard.isMatched(i) || gameBoard.getColourIndex(i) != colourIndex) continue;
+            if (remembers(i, random)) return i;
+        }
+        return chooseUnseenCard(gameBoard, random);
+    }
+
+    /**
+     * Does this player still remember the given card. Each turn since the card was last
+     * remembered it is forgotten with a chance of 1 - retention, and once forgotten it stays
+     * forgotten until it is seen again
+     * @param cellIndex
+     * The position of the card on the board
+     * @param random
+     * The source of randomness for this game
+     * @return
+     * True if the card is remembered, false otherwise
+     */
+    private boolean remembers(int cellIndex, Random random) {
+        if (rememberedAt[cellIndex] < 0) return false;
+
+        int turnsSince = currentTurn - rememberedAt[cellIndex];
+        if (retention < 1 && turnsSince > 0 && random.nextDouble() >= Math.pow(retention, turnsSince)) {
+            rememberedAt[cellIndex] = -1;
+            return false;
+        }
+        rememberedAt[cellIndex] = currentTurn;
+        return true;
+    }
+
+    /**
+     * Choose a face down card that is not remembered with equal probability, or any face down
+     * card if every card is remembered
+     * @param gameBoard
+     * The board the game is played on
+     * @param random
+     * The source of randomness for this game
+     * @return
+     * The position of the chosen card
+     */
+    private int chooseUnseenCard(GameBoard gameBoard, Random random) {
+        int chosenCard = -1;
+        int candidates = 0;
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (gameBoard.isMatched(i) || gameBoard.isFaceUp(i) || rememberedAt[i] >= 0) continue;
+            candidates++;
+            if (random.nextInt(candidates) == 0) chosenCard = i;
+        }
+        return chosenCard >= 0 ? chosenCard : RandomStrategy.chooseFaceDownCard(gameBoard, random);
+    }
+}
@@ -0,0 +1,33 @@
+import java.io.IOException;
+
+/**
+ * Receives a snapshot of the metrics of a view, such as ViewMetrics, and sends it somewhere a
+ * developer can read it: logcat with LogcatMetricsExporter, or a file with FileMetricsExporter
+ */
+interface MetricsExporter {
+
+    /**
+     * Export the value of a counter
+     * @param name
+     * The name of the counter
+     * @param value
+     * The number counted
+     */
+    void exportCounter(String name, long value);
+
+    /**
+     * Export a histogram
+     * @param name
+     * The name of the histogram
+     * @param histogram
+     * The histogram, which may still be recorded into while it is exported
+     */
+    void exportHistogram(String name, MetricsHistogram histogram);
+
+    /**
+     * Finish exporting a snapshot, writing out anything that has been kept back
+     * @throws IOException
+     * If the snapshot cannot be written
+     */
+    void flush() throws IOException;
+}
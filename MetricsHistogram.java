@@ -0,0 +1,146 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values into a fixed set of buckets, without locking and without allocating, so it can be
+ * recorded into on the UI thread and read from any other. Each bucket counts the values up to and
+ * including its upper bound that did not fit in the bucket before it, and a last bucket counts
+ * every larger value. Percentiles are reported as the upper bound of the bucket they fall in
+ */
+class MetricsHistogram {
+
+    private final String unit;
+    private final double unitScale;
+    private final long[] upperBounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param unit
+     * The unit values are reported in, such as "ms"
+     * @param unitScale
+     * The number of recorded values in one reported unit, such as 1000000 for nanoseconds
+     * reported in milliseconds
+     * @param upperBounds
+     * The largest value counted by each bucket, in increasing order
+     */
+    MetricsHistogram(String unit, double unitScale, long... upperBounds) {
+        this.unit = unit;
+        this.unitScale = unitScale;
+        this.upperBounds = upperBounds.clone();
+        counts = new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    /**
+     * Create a histogram of durations in nanoseconds, reported in milliseconds, with buckets that
+     * double from a quarter of a millisecond to half a second
+     * @return
+     * The histogram
+     */
+    static MetricsHistogram forDurations() {
+        long[] upperBounds = new long[12];
+        for (int i = 0; i < upperBounds.length; i++) {
+            upperBounds[i] = 250000L << i;
+        }
+        return new MetricsHistogram("ms", 1e6, upperBounds);
+    }
+
+    /**
+     * Create a histogram of small counts, with buckets for 0 to 7 then doubling up to 1024
+     * @return
+     * The histogram
+     */
+    static MetricsHistogram forCounts() {
+        return new MetricsHistogram("", 1, 0, 1, 2, 3, 4, 5, 6, 7, 15, 31, 63, 127, 255, 511, 1023);
+    }
+
+    /**
+     * Count a value
+     * @param value
+     * The value, in the unit the histogram records
+     */
+    void record(long value) {
+        int bucket = 0;
+        while (bucket < upperBounds.length && value > upperBounds[bucket]) bucket++;
+        counts.incrementAndGet(bucket);
+        total.addAndGet(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Get the number of values counted
+     * @return
+     * The number of values
+     */
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Get the value below which the given fraction of values fall
+     * @param percentile
+     * The fraction of values, between 0 and 1
+     * @return
+     * The upper bound of the bucket holding the percentile, or the largest value counted if the
+     * percentile is in the last bucket
+     */
+    long getPercentile(double percentile) {
+        long target = (long) Math.ceil(getCount() * percentile);
+        long seen = 0;
+        for (int i = 0; i < upperBounds.length; i++) {
+            seen += counts.get(i);
+            if (seen >= target) return upperBounds[i];
+        }
+        return max.get();
+    }
+
+    /**
+     * Forget every value counted, for example after the histogram has been exported
+     */
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Describe the histogram as its count, mean, median, 90th and 99th percentiles, maximum and
+     * the count in every bucket that is not empty
+     * @return
+     * The description
+     */
+    @Override
+    public String toString() {
+        long count = getCount();
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT,
+                "count=%d mean=%.2f%s p50<=%s p90<=%s p99<=%s max=%s",
+                count, count == 0 ? 0 : total.get() / unitScale / count, unit,
+                format(getPercentile(0.5)), format(getPercentile(0.9)), format(getPercentile(0.99)),
+                format(max.get())));
+        for (int i = 0; i < counts.length(); i++) {
+            long bucketCount = counts.get(i);
+            if (bucketCount == 0) continue;
+            text.append(i < upperBounds.length ? " <=" + format(upperBounds[i]) : " >" + format(upperBounds[i - 1]));
+            text.append(':').append(bucketCount);
+        }
+        return text.toString();
+    }
+
+    private String format(long value) {
+        if (unitScale == 1) return value + unit;
+        return String.format(Locale.ROOT, "%.2f%s", value / unitScale, unit);
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An append-only record of every card turned up in a game. Together with how the game started,
+ * either the number of players and the seed its board was shuffled with or a saved GameStateCodec
+ * state, the journal is enough to replay the game exactly with GameReplay, without storing the
+ * state of the game after each move.
+ * Each move is a fixed width record of 8 bytes: the position of the card, and the player who
+ * turned it up packed with the milliseconds since the previous move
+ */
+class MoveJournal {
+
+    static final int RECORD_SIZE = 8;
+
+    /**
+     * The most moves a journal read by readFrom may hold. A bigger count is treated as corrupt
+     */
+    static final int MAX_MOVES = 1 << 24;
+
+    private static final int MAGIC = 0x4D474A31;
+    private static final int MAX_TIME_DELTA = 0xFFFFFF;
+
+    private int columns;
+    private int rows;
+    private int playerCount;
+    private long seed;
+    private byte[] startState;
+
+    private int[] records = new int[2 * 64];
+    private int moveCount;
+    private long lastMoveTime;
+
+    /**
+     * Start journaling a new game whose board was shuffled with the given seed, discarding any
+     * moves already journaled
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @param playerCount
+     * The number of players taking turns
+     * @param seed
+     * The seed the board was shuffled with
+     * @param timeMillis
+     * The time the game started, in milliseconds
+     */
+    void startSeeded(int columns, int rows, int playerCount, long seed, long timeMillis) {
+        this.columns = columns;
+        this.rows = rows;
+        this.playerCount = playerCount;
+        this.seed = seed;
+        startState = null;
+        moveCount = 0;
+        lastMoveTime = timeMillis;
+    }
+
+    /**
+     * Start journaling a game that carries on from a saved state, for example one restored after
+     * the process was killed, discarding any moves already journaled
+     * @param startState
+     * The state of the game, as saved by GameStateCodec
+     * @param timeMillis
+     * The time the game carried on from, in milliseconds
+     */
+    void startFromState(byte[] startState, long timeMillis) {
+        this.startState = startState;
+        moveCount = 0;
+        lastMoveTime = timeMillis;
+    }
+
+    /**
+     * Append a card that has been turned up
+     * @param cellIndex
+     * The position of the card on the board
+     * @param player
+     * The number of the player who turned the card up, starting from zero
+     * @param timeMillis
+     * The time the card was turned up, in milliseconds
+     */
+    void record(int cellIndex, int player, long timeMillis) {
+        if (2 * moveCount == records.length) {
+            records = Arrays.copyOf(records, records.length * 2);
+        }
+        int timeDelta = (int) Math.min(Math.max(timeMillis - lastMoveTime, 0), MAX_TIME_DELTA);
+        records[2 * moveCount] = cellIndex;
+        records[2 * moveCount + 1] = player << 24 | timeDelta;
+        moveCount++;
+        lastMoveTime = timeMillis;
+    }
+
+    /**
+     * Set up a game engine as the journaled game was before its first move
+     * @param gameEngine
+     * The engine to set up
+     */
+    void startGame(GameEngine gameEngine) {
+        if (startState != null) {
+            GameStateCodec.decode(ByteBuffer.wrap(startState), gameEngine);
+        } else {
+            gameEngine.setPlayerCount(playerCount);
+            gameEngine.newGame(columns, rows, seed);
+        }
+    }
+
+    /**
+     * Get the number of moves journaled
+     * @return
+     * The number of cards turned up so far
+     */
+    int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Get the card turned up by a move
+     * @param move
+     * The number of the move, starting from zero
+     * @return
+     * The position of the card on the board
+     */
+    int getCellIndex(int move) {
+        return records[2 * move];
+    }
+
+    /**
+     * Get the player who made a move
+     * @param move
+     * The number of the move, starting from zero
+     * @return
+     * The number of the player, starting from zero
+     */
+    int getPlayer(int move) {
+        return records[2 * move + 1] >>> 24;
+    }
+
+    /**
+     * Get the time between a move and the move before it, or the start of the game for the first
+     * move. Gaps longer than about four and a half hours are recorded as that long
+     * @param move
+     * The number of the move, starting from zero
+     * @return
+     * The time since the previous move, in milliseconds
+     */
+    int getTimeDelta(int move) {
+        return records[2 * move + 1] & MAX_TIME_DELTA;
+    }
+
+    /**
+     * Write the journal, for example to attach to a bug report or send for analysis
+     * @param out
+     * The stream to write to
+     * @throws IOException
+     * If the stream cannot be written to
+     */
+    void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        if (startState != null) {
+            data.writeBoolean(true);
+            data.writeInt(startState.length);
+            data.write(startState);
+        } else {
+            data.writeBoolean(false);
+            data.writeShort(columns);
+            data.writeShort(rows);
+            data.writeByte(playerCount);
+            data.writeLong(seed);
+        }
+        data.writeInt(moveCount);
+        for (int i = 0; i < 2 * moveCount; i++) {
+            data.writeInt(records[i]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Read a journal written by writeTo
+     * @param in
+     * The stream to read from
+     * @return
+     * The journal
+     * @throws IOException
+     * If the stream cannot be read or does not hold a journal
+     */
+    static MoveJournal readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) throw new IOException("Not a move journal");
+
+        MoveJournal journal = new MoveJournal();
+        if (data.readBoolean()) {
+            int startStateSize = data.readInt();
+            if (startStateSize < 0 || startStateSize > GameStateCodec.MAX_ENCODED_SIZE) {
+                throw new IOException("Corrupt start state size " + startStateSize);
+            }
+            byte[] startState = new byte[startStateSize];
+            data.readFully(startState);
+            journal.startFromState(startState, 0);
+        } else {
+            int columns = data.readShort();
+            int rows = data.readShort();
+            int playerCount = data.readByte();
+            if (columns <= 0 || rows <= 0 || columns * rows > GameStateCodec.MAX_CARDS || (columns * rows) % 2 != 0
+                    || playerCount < 1 || playerCount > GameEngine.MAX_PLAYERS) {
+                throw new IOException("Corrupt game of " + columns + "x" + rows + " with " + playerCount + " players");
+            }
+            journal.startSeeded(columns, rows, playerCount, data.readLong(), 0);
+        }
+        int moveCount = data.readInt();
+        if (moveCount < 0 || moveCount > MAX_MOVES) throw new IOException("Corrupt move count " + moveCount);
+
+        // The records grow as they are read, so a count bigger than the stream holds fails with an
+        // EOFException before much is allocated
+        journal.records = new int[2 * Math.max(Math.min(moveCount, 64), 1)];
+        for (int i = 0; i < moveCount; i++) {
+            if (2 * i == journal.records.length) {
+                journal.records = Arrays.copyOf(journal.records, 2 * Math.min(2 * i, moveCount));
+            }
+            journal.records[2 * i] = data.readInt();
+            journal.records[2 * i + 1] = data.readInt();
+        }
+        journal.moveCount = moveCount;
+        return journal;
+    }
+}
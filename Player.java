@@ -1,33 +1,46 @@
-
 /**
- * Represents the concept of a Player in the game and keep track of their score
+ * Represents the concept of a Player in the game. A player is a thin view onto their entry in the
+ * GameEngine's array of scores, which the engine keeps up to date
  */
 class Player {
 
-    private int currentScore;
     private final String playerId;
+    private final int index;
+    private final int[] scores;
 
-    Player(String playerId) {
-        currentScore = 0;
+    /**
+     * Constructor
+     * @param playerId
+     * The name of this player
+     * @param index
+     * The number of this player, from zero for player one
+     * @param scores
+     * The game engine's scores, indexed by player number
+     */
+    Player(String playerId, int index, int[] scores) {
         this.playerId = playerId;
+        this.index = index;
+        this.scores = scores;
     }
 
     /**
-     * Set the name of this player
+     * Get the name of this player
      * @return
      * The name of this player
      */
     String getPlayerId() { return  playerId; }
 
     /**
-     * Get the current score for this player
+     * Get the number of this player
      * @return
-     * The current score of this player
+     * The number of this player, from zero for player one
      */
-    int getCurrentScore() { return currentScore; }
+    int getIndex() { return index; }
 
     /**
-     * Add one to this players current score
+     * Get the current score for this player
+     * @return
+     * The current score of this player
      */
-    void incrementSccore() { currentScore += 1; }
+    int getCurrentScore() { return scores[index]; }
 }
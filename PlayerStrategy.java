@@ -0,0 +1,68 @@
+import java.util.Random;
+
+/**
+ * Decides which cards a computer controlled player turns up. Used by the SimulationRunner to play
+ * games without a user. A strategy may remember the cards it has seen, so each game being played
+ * at the same time needs its own instance
+ */
+interface PlayerStrategy {
+
+    /**
+     * Creates a new instance of a strategy, one for each thread playing games
+     */
+    interface Factory {
+        PlayerStrategy create();
+    }
+
+    /**
+     * Forget everything about the previous game, ready for a new game on the given board
+     * @param gameBoard
+     * The board the new game is played on
+     */
+    void newGame(GameBoard gameBoard);
+
+    /**
+     * A card has been turned face up by either player, so its colour is now known
+     * @param cellIndex
+     * The position of the card on the board
+     * @param colourIndex
+     * The colour of the card
+     * @param turn
+     * The number of turns played so far in this game
+     */
+    void onCardRevealed(int cellIndex, int colourIndex, int turn);
+
+    /**
+     * The two cards turned up this turn are the same colour and are about to be matched. Called
+     * after both cards have been revealed and before the turn is resolved
+     * @param firstCellIndex
+     * The position of the first card turned up this turn
+     * @param secondCellIndex
+     * The position of the second card turned up this turn
+     */
+    void onPairMatched(int firstCellIndex, int secondCellIndex);
+
+    /**
+     * Choose the first card to turn up this turn
+     * @param gameBoard
+     * The board the game is played on
+     * @param random
+     * The source of randomness for this game
+     * @return
+     * The position of a face down, unmatched card
+     */
+    int chooseFirstCard(GameBoard gameBoard, Random random);
+
+    /**
+     * Choose the second card to turn up this turn
+     * @param gameBoard
+     * The board the game is played on
+     * @param firstCellIndex
+     * The position of the card already turned up this turn
+     * @param random
+     * The source of randomness for this game
+     * @return
+     * The position of a face down, unmatched card
+     */
+    int chooseSecondCard(GameBoard gameBoard, int firstCellIndex, Random random);
+}
@@ -0,0 +1,57 @@
+import java.util.Random;
+
+/**
+ * A player with no memory, who turns up face down cards at random
+ */
+class RandomStrategy implements PlayerStrategy {
+
+    static final PlayerStrategy.Factory FACTORY = new PlayerStrategy.Factory() {
+        @Override
+        public PlayerStrategy create() {
+            return new RandomStrategy();
+        }
+    };
+
+    @Override
+    public void newGame(GameBoard gameBoard) {
+    }
+
+    @Override
+    public void onCardRevealed(int cellIndex, int colourIndex, int turn) {
+    }
+
+    @Override
+    public void onPairMatched(int firstCellIndex, int secondCellIndex) {
+    }
+
+    @Override
+    public int chooseFirstCard(GameBoard gameBoard, Random random) {
+        return chooseFaceDownCard(gameBoard, random);
+    }
+
+    @Override
+    public int chooseSecondCard(GameBoard gameBoard, int firstCellIndex, Random random) {
+        return chooseFaceDownCard(gameBoard, random);
+    }
+
+    /**
+     * Choose one of the face down, unmatched cards with equal probability. Uses reservoir sampling
+     * so that no list of candidates needs to be built
+     * @param gameBoard
+     * The board the game is played on
+     * @param random
+     * The source of randomness for this game
+     * @return
+     * The position of the chosen card, or -1 if every card is face up or matched
+     */
+    static int chooseFaceDownCard(GameBoard gameBoard, Random random) {
+        int chosenCard = -1;
+        int candidates = 0;
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (gameBoard.isMatched(i) || gameBoard.isFaceUp(i)) continue;
+            candidates++;
+            if (random.nextInt(candidates) == 0) chosenCard = i;
+        }
+        return chosenCard;
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The combined outcome of a batch of simulated games: how often each player won, the distribution
+ * of the number of turns each game took, and how quickly the games were played. Results of
+ * batches played in parallel are combined with merge
+ */
+class SimulationResult {
+
+    private int games;
+    private int playerOneWins;
+    private int playerTwoWins;
+    private int draws;
+    private long totalTurns;
+    private int minTurns = Integer.MAX_VALUE;
+    private int maxTurns;
+
+    /**
+     * The number of games that took each number of turns, indexed by the number of turns
+     */
+    private long[] turnCounts = new long[64];
+    private long elapsedNanos;
+
+    /**
+     * Add the outcome of one game
+     * @param turns
+     * The number of turns the game took
+     * @param playerOneScore
+     * The final score of player one
+     * @param playerTwoScore
+     * The final score of player two
+     */
+    void record(int turns, int playerOneScore, int playerTwoScore) {
+        games++;
+        if (playerOneScore > playerTwoScore) playerOneWins++;
+        else if (playerTwoScore > playerOneScore) playerTwoWins++;
+        else draws++;
+
+        totalTurns += turns;
+        minTurns = Math.min(minTurns, turns);
+        maxTurns = Math.max(maxTurns, turns);
+        if (turns >= turnCounts.length) {
+            turnCounts = Arrays.copyOf(turnCounts, Math.max(turns + 1, turnCounts.length * 2));
+        }
+        turnCounts[turns]++;
+    }
+
+    /**
+     * Add the outcomes of another batch of games to this one
+     * @param other
+     * The result of the other batch
+     * @return
+     * This result, containing both batches
+     */
+    SimulationResult merge(SimulationResult other) {
+        games += other.games;
+        playerOneWins += other.playerOneWins;
+        playerTwoWins += other.playerTwoWins;
+        draws += other.draws;
+        totalTurns += other.totalTurns;
+        minTurns = Math.min(minTurns, other.minTurns);
+        maxTurns = Math.max(maxTurns, other.maxTurns);
+        if (other.turnCounts.length > turnCounts.length) {
+            turnCounts = Arrays.copyOf(turnCounts, other.turnCounts.length);
+        }
+        for (int i = 0; i < other.turnCounts.length; i++) {
+            turnCounts[i] += other.turnCounts[i];
+        }
+        return this;
+    }
+
+    /**
+     * Set how long it took to play every game, used to calculate the throughput
+     * @param elapsedNanos
+     * The wall clock time taken, in nanoseconds
+     */
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the number of games played
+     * @return
+     * The number of games
+     */
+    int getGames() {
+        return games;
+    }
+
+    /**
+     * Get the fraction of games won by the player who went first
+     * @return
+     * The win rate, between 0 and 1
+     */
+    double getPlayerOneWinRate() {
+        return games == 0 ? 0 : (double) playerOneWins / games;
+    }
+
+    /**
+     * Get the fraction of games won by the player who went second
+     * @return
+     * The win rate, between 0 and 1
+     */
+    double getPlayerTwoWinRate() {
+        return games == 0 ? 0 : (double) playerTwoWins / games;
+    }
+
+    /**
+     * Get the fraction of games that ended in a draw
+     * @return
+     * The draw rate, between 0 and 1
+     */
+    double getDrawRate() {
+        return games == 0 ? 0 : (double) draws / games;
+    }
+
+    /**
+     * Get the average number of turns a game took
+     * @return
+     * The mean number of turns
+     */
+    double getMeanTurns() {
+        return games == 0 ? 0 : (double) totalTurns / games;
+    }
+
+    /**
+     * Find the number of turns that the given fraction of games finished within
+     * @param fraction
+     * The fraction of games, between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return
+     * The number of turns
+     */
+    int getTurnsPercentile(double fraction) {
+        long target = (long) Math.ceil(fraction * games);
+        long seen = 0;
+        for (int turns = 0; turns < turnCounts.length; turns++) {
+            seen += turnCounts[turns];
+            if (seen >= target && seen > 0) return turns;
+        }
+        return maxTurns;
+    }
+
+    /**
+     * Get the number of games played each second across all threads
+     * @return
+     * The throughput of the simulation
+     */
+    double getGamesPerSecond() {
+        return elapsedNanos == 0 ? 0 : games * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "games: %d%n"
+                        + "player one wins: %.2f%%, player two wins: %.2f%%, draws: %.2f%%%n"
+                        + "turns: min %d, mean %.1f, p50 %d, p90 %d, p99 %d, max %d%n"
+                        + "throughput: %.0f games/s",
+                games,
+                getPlayerOneWinRate() * 100, getPlayerTwoWinRate() * 100, getDrawRate() * 100,
+                games == 0 ? 0 : minTurns, getMeanTurns(), getTurnsPercentile(0.5),
+                getTurnsPercentile(0.9), getTurnsPercentile(0.99), maxTurns,
+                getGamesPerSecond());
+    }
+}
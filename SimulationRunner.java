@@ -0,0 +1,196 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays large numbers of games between two computer controlled players, without Android, to tune
+ * difficulty and measure the advantage of going first. The games are split across every core with
+ * a fork-join pool. Each game is shuffled and played with its own seed derived from the
+ * simulation's seed and the game's number, so results are the same however the games are split
+ * between threads
+ */
+class SimulationRunner {
+
+    /**
+     * Batches smaller than this are played on one thread rather than split further
+     */
+    private static final int GAMES_PER_TASK = 256;
+
+    private final int columns;
+    private final int rows;
+    private final PlayerStrategy.Factory playerOneStrategy;
+    private final PlayerStrategy.Factory playerTwoStrategy;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @param playerOneStrategy
+     * Creates the strategy used by the player who goes first
+     * @param playerTwoStrategy
+     * Creates the strategy used by the player who goes second
+     * @param parallelism
+     * The number of threads to play games on
+     */
+    SimulationRunner(int columns, int rows, PlayerStrategy.Factory playerOneStrategy,
+                     PlayerStrategy.Factory playerTwoStrategy, int parallelism) {
+        GameBoard.checkDimensions(columns, rows);
+        this.columns = columns;
+        this.rows = rows;
+        this.playerOneStrategy = playerOneStrategy;
+        this.playerTwoStrategy = playerTwoStrategy;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Play a number of games
+     * @param games
+     * The number of games to play
+     * @param seed
+     * The seed the games are derived from. The same seed always gives the same result
+     * @return
+     * The combined outcome of every game
+     */
+    SimulationResult run(int games, long seed) {
+        long start = System.nanoTime();
+        SimulationResult result = pool.invoke(new SimulationTask(0, games, seed));
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Derive the seed of one game from the simulation's seed, using the SplitMix64 mixing function
+     * so that neighbouring games get unrelated seeds
+     * @param seed
+     * The simulation's seed
+     * @param game
+     * The number of the game
+     * @return
+     * The seed for that game
+     */
+    static long seedForGame(long seed, int game) {
+        long z = seed + (game + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Plays a range of games, splitting it in half until it is small enough to play on one thread
+     */
+    private class SimulationTask extends RecursiveTask<SimulationResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int firstGame;
+        private final int endGame;
+        private final long seed;
+
+        SimulationTask(int firstGame, int endGame, long seed) {
+            this.firstGame = firstGame;
+            this.endGame = endGame;
+            this.seed = seed;
+        }
+
+        @Override
+        protected SimulationResult compute() {
+            if (endGame - firstGame > GAMES_PER_TASK) {
+                int middle = (firstGame + endGame) >>> 1;
+                SimulationTask firstHalf = new SimulationTask(firstGame, middle, seed);
+                firstHalf.fork();
+                SimulationResult result = new SimulationTask(middle, endGame, seed).compute();
+                return result.merge(firstHalf.join());
+            }
+            return playGames();
+        }
+
+        /**
+         * Play this task's games on the current thread. The engine, strategies and source of
+         * randomness are reused for every game, being reset and reseeded in between
+         * @return
+         * The outcome of this task's games
+         */
+        private SimulationResult playGames() {
+            SimulationResult result = new SimulationResult();
+            Random random = new Random();
+            GameEngine gameEngine = new GameEngine(columns, rows, random);
+            PlayerStrategy playerOne = playerOneStrategy.create();
+            PlayerStrategy playerTwo = playerTwoStrategy.create();
+
+            for (int game = firstGame; game < endGame; game++) {
+                random.setSeed(seedForGame(seed, game));
+                gameEngine.newGame(columns, rows);
+                GameBoard gameBoard = gameEngine.getGameBoard();
+                playerOne.newGame(gameBoard);
+                playerTwo.newGame(gameBoard);
+
+                int turns = 0;
+                while (!gameEngine.isGameOver()) {
+                    PlayerStrategy currentStrategy = gameEngine.getCurrentPlayerIndex() == 0 ? playerOne : playerTwo;
+
+                    int firstCard = currentStrategy.chooseFirstCard(gameBoard, random);
+                    playCard(gameEngine, firstCard, turns, playerOne, playerTwo);
+                    int secondCard = currentStrategy.chooseSecondCard(gameBoard, firstCard, random);
+                    playCard(gameEngine, secondCard, turns, playerOne, playerTwo);
+                    if (gameBoard.getColourIndex(firstCard) == gameBoard.getColourIndex(secondCard)) {
+                        playerOne.onPairMatched(firstCard, secondCard);
+                        playerTwo.onPairMatched(firstCard, secondCard);
+                    }
+
+                    gameEngine.resolveTurn();
+                    turns++;
+                }
+                result.record(turns, gameEngine.getPlayer(0).getCurrentScore(), gameEngine.getPlayer(1).getCurrentScore());
+            }
+            return result;
+        }
+
+        /**
+         * Turn up a card and show it to both players
+         */
+        private void playCard(GameEngine gameEngine, int cellIndex, int turn, PlayerStrategy playerOne, PlayerStrategy playerTwo) {
+            if (!gameEngine.flip(cellIndex)) {
+                throw new IllegalStateException("Strategy chose a card that cannot be turned up: " + cellIndex);
+            }
+            int colourIndex = gameEngine.getGameBoard().getColourIndex(cellIndex);
+            playerOne.onCardRevealed(cellIndex, colourIndex, turn);
+            playerTwo.onCardRevealed(cellIndex, colourIndex, turn);
+        }
+    }
+
+    /**
+     * Create the factory for a strategy from its name on the command line
+     * @param name
+     * "random", "perfect", or "decay:retention" e.g. "decay:0.9"
+     * @return
+     * The factory for that strategy
+     */
+    static PlayerStrategy.Factory parseStrategy(String name) {
+        if (name.equals("random")) return RandomStrategy.FACTORY;
+        if (name.equals("perfect")) return MemoryStrategy.factory(1);
+        if (name.startsWith("decay:")) return MemoryStrategy.factory(Double.parseDouble(name.substring("decay:".length())));
+        throw new IllegalArgumentException("Unknown strategy " + name);
+    }
+
+    /**
+     * Runs a simulation from the command line and prints the result
+     * @param args
+     * [columns rows games seed playerOneStrategy playerTwoStrategy], defaulting to
+     * 4 4 100000 1 perfect decay:0.9
+     */
+    public static void main(String[] args) {
+        int columns = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        PlayerStrategy.Factory playerOne = parseStrategy(args.length > 4 ? args[4] : "perfect");
+        PlayerStrategy.Factory playerTwo = parseStrategy(args.length > 5 ? args[5] : "decay:0.9");
+
+        SimulationRunner runner = new SimulationRunner(columns, rows, playerOne, playerTwo,
+                Runtime.getRuntime().availableProcessors());
+        System.out.println(runner.run(games, seed));
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A device's connection to a SyncServer over TCP. Sending only copies the message into a buffer
+ * for a writer thread, so it never waits on the network and can be called from Android's main
+ * thread. A reader thread passes the messages that arrive to the SyncClient, so the client's
+ * listener is called on that thread
+ */
+class SocketSyncConnection implements SyncConnection {
+
+    private final SocketChannel channel;
+    private final SyncClient client;
+    private final ByteBuffer pending = ByteBuffer.allocate(64 * SyncProtocol.MAX_MESSAGE_SIZE);
+    private boolean isClosed;
+
+    private final Runnable reader = new Runnable() {
+        @Override
+        public void run() {
+            read();
+        }
+    };
+
+    private final Runnable writer = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    private SocketSyncConnection(SocketChannel channel, SyncClient client) {
+        this.channel = channel;
+        this.client = client;
+    }
+
+    /**
+     * Connect a client to a server, and start reading the server's messages. This waits for the
+     * connection, so on Android it must be called off the main thread
+     * @param host
+     * The server's host name or address
+     * @param port
+     * The server's port
+     * @param client
+     * The client to connect
+     * @return
+     * The client's connection, which has also been given to the client
+     * @throws IOException
+     * If the server cannot be reached
+     */
+    static SocketSyncConnection open(String host, int port, SyncClient client) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        SocketSyncConnection connection = new SocketSyncConnection(channel, client);
+        client.setConnection(connection);
+
+        startDaemon(connection.reader, "SyncClient reader");
+        startDaemon(connection.writer, "SyncClient writer");
+        return connection;
+    }
+
+    /**
+     * Queue a message for the writer thread. If the writer has fallen so far behind that the
+     * buffer is full the connection is closed
+     * @param message
+     * The buffer holding exactly one message between its position and limit
+     */
+    @Override
+    public void send(ByteBuffer message) {
+        synchronized (pending) {
+            if (isClosed) return;
+            if (pending.remaining() < message.remaining()) {
+                close();
+                return;
+            }
+            pending.put(message);
+            pending.notify();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (pending) {
+            isClosed = true;
+            pending.notify();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The connection is gone either way
+        }
+    }
+
+    /**
+     * Write queued messages until the connection closes. The buffer is only locked to take the
+     * messages out of it, not while they are written
+     */
+    private void write() {
+        ByteBuffer out = ByteBuffer.allocate(pending.capacity());
+        try {
+            while (true) {
+                synchronized (pending) {
+                    while (pending.position() == 0 && !isClosed) {
+                        pending.wait();
+                    }
+                    if (isClosed) return;
+                    pending.flip();
+                    out.clear();
+                    out.put(pending);
+                    pending.clear();
+                }
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        }
+    }
+
+    /**
+     * Read messages from the server and pass each to the client, until the connection closes
+     */
+    private void read() {
+        ByteBuffer in = ByteBuffer.allocate(64 * SyncProtocol.MAX_MESSAGE_SIZE);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.hasRemaining()) {
+                    int size = SyncProtocol.messageSize(in.get(in.position()));
+                    if (size < 0) throw new IOException("Unknown message type");
+                    if (in.remaining() < size) break;
+
+                    int limit = in.limit();
+                    int end = in.position() + size;
+                    in.limit(end);
+                    client.onMessage(in);
+                    in.limit(limit).position(end);
+                }
+                in.compact();
+            }
+        } catch (IOException e) {
+            // Closed by either end
+        }
+        close();
+        client.onClosed();
+    }
+
+    private static void startDaemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,730 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps lifetime statistics across every game played: how many games each player has played and
+ * their best score on each size of board, and the average number of turns a game takes on each
+ * size of board, along with the most recent games.
+ * The games are kept in an append-only log of compact binary records, each a length, the record
+ * and a CRC32 of it, so a record torn by the process dying mid-write is found and dropped when the
+ * log is next loaded. Once enough games have been appended the log is compacted: it is rewritten
+ * as a summary for each player and board, followed by the recent games, into a new file which
+ * replaces the log. The statistics are answered from an in-memory index of those summaries, kept
+ * up to date as games are recorded, so a query is a couple of hash lookups rather than a scan of
+ * the history.
+ * Everything that touches the file - loading the log, cutting off a torn record, appending and
+ * compacting - is done in order on one background thread shared by every store, so no thread
+ * waits for the disk and the file is only ever written by one thread. One store is shared per
+ * file across the process, see get. The index is updated on that thread and read from any thread
+ * under the store's lock, which is only held for a lookup or to add a game, never for I/O. Until
+ * the log has been loaded the statistics only include the games recorded since
+ */
+class StatsStore {
+
+    /**
+     * The number of recent games kept, both in memory and in a compacted log
+     */
+    static final int HISTORY_SIZE = 50;
+
+    /**
+     * The number of games appended to the log before it is compacted
+     */
+    private static final int COMPACTION_THRESHOLD = 4 * HISTORY_SIZE;
+
+    private static final int MAGIC = 0x4D535331;
+    private static final byte GAME = 1;
+    private static final byte HISTORY_GAME = 2;
+    private static final byte PLAYER_SUMMARY = 3;
+    private static final byte BOARD_SUMMARY = 4;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    /**
+     * A finished game, as recorded in the history
+     */
+    static final class GameRecord {
+        private final long timeMillis;
+        private final int columns;
+        private final int rows;
+        private final int turnCount;
+        private final String[] playerIds;
+        private final int[] scores;
+
+        GameRecord(long timeMillis, int columns, int rows, int turnCount, String[] playerIds, int[] scores) {
+            this.timeMillis = timeMillis;
+            this.columns = columns;
+            this.rows = rows;
+            this.turnCount = turnCount;
+            this.playerIds = playerIds;
+            this.scores = scores;
+        }
+
+        /**
+         * Get when the game finished
+         * @return
+         * The time the game finished, in milliseconds since the epoch
+         */
+        long getTimeMillis() { return timeMillis; }
+
+        /**
+         * Get the number of cards in each row of the board
+         * @return
+         * The number of columns
+         */
+        int getColumns() { return columns; }
+
+        /**
+         * Get the number of cards in each column of the board
+         * @return
+         * The number of rows
+         */
+        int getRows() { return rows; }
+
+        /**
+         * Get the number of turns the game took
+         * @return
+         * The number of turns, matched or not
+         */
+        int getTurnCount() { return turnCount; }
+
+        /**
+         * Get the number of players in the game
+         * @return
+         * The number of players
+         */
+        int getPlayerCount() { return playerIds.length; }
+
+        /**
+         * Get the name of a player in the game
+         * @param playerIndex
+         * The number of the player, from zero for player one
+         * @return
+         * The name of the player
+         */
+        String getPlayerId(int playerIndex) { return playerIds[playerIndex]; }
+
+        /**
+         * Get the final score of a player in the game
+         * @param playerIndex
+         * The number of the player, from zero for player one
+         * @return
+         * The player's score
+         */
+        int getScore(int playerIndex) { return scores[playerIndex]; }
+    }
+
+    /**
+     * One player's statistics on one size of board
+     */
+    private static final class PlayerStats {
+        final String playerId;
+        int gamesPlayed;
+        int bestScore;
+
+        PlayerStats(String playerId) {
+            this.playerId = playerId;
+        }
+    }
+
+    /**
+     * The statistics of one size of board, with each player who has played on it
+     */
+    private static final class BoardStats {
+        final int columns;
+        final int rows;
+        int gamesPlayed;
+        long totalTurns;
+        final Map<String, PlayerStats> players = new HashMap<>();
+
+        BoardStats(int columns, int rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        PlayerStats getPlayer(String playerId) {
+            PlayerStats stats = players.get(playerId);
+            if (stats == null) {
+                stats = new PlayerStats(playerId);
+                players.put(playerId, stats);
+            }
+            return stats;
+        }
+    }
+
+    private static final Comparator<PlayerStats> BEST_SCORE_FIRST = new Comparator<PlayerStats>() {
+        @Override
+        public int compare(PlayerStats a, PlayerStats b) {
+            return b.bestScore != a.bestScore ? Integer.compare(b.bestScore, a.bestScore) : a.playerId.compareTo(b.playerId);
+        }
+    };
+
+    /**
+     * Writes the logs of every store in order, on one background thread
+     */
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "StatsStore");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * The store of each log file opened, keyed by its absolute path
+     */
+    private static final Map<String, StatsStore> stores = new HashMap<>();
+
+    private final File file;
+    private volatile boolean isLoaded;
+
+    /**
+     * The index, guarded by the store's lock, keyed by the board size packed as columns << 16 | rows
+     */
+    private final Map<Integer, BoardStats> boards = new HashMap<>();
+    private final Map<String, Integer> gamesPlayedByPlayer = new HashMap<>();
+    private final ArrayDeque<GameRecord> recentGames = new ArrayDeque<>();
+    private int gamesSinceCompaction;
+
+    /**
+     * Only touched on the writer thread
+     */
+    private FileOutputStream out;
+
+    /**
+     * Constructor. The log starts loading in the background straight away. Only one store may use
+     * a file at a time, so stores should be got with get rather than created
+     * @param file
+     * The file the log is kept in, created when the first game is recorded
+     */
+    StatsStore(File file) {
+        this.file = file;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load();
+                } catch (IOException e) {
+                    // Play carries on without the history, and new games are still recorded
+                }
+                isLoaded = true;
+            }
+        });
+    }
+
+    /**
+     * Get the store of a log file, opening it the first time it is asked for, so every view in the
+     * process records into and reads from the same store
+     * @param file
+     * The file the log is kept in, created when the first game is recorded
+     * @return
+     * The store
+     */
+    static synchronized StatsStore get(File file) {
+        String path = file.getAbsolutePath();
+        StatsStore store = stores.get(path);
+        if (store == null) {
+            store = new StatsStore(file);
+            stores.put(path, store);
+        }
+        return store;
+    }
+
+    /**
+     * Check whether the log has been read into the index
+     * @return
+     * True once the statistics include every game in the log, false while it is being loaded
+     */
+    boolean isLoaded() {
+        return isLoaded;
+    }
+
+    /**
+     * Read the log into the index, on the writer thread before anything is written to it. Reading
+     * stops at the first record that is incomplete or corrupt, and the log is cut off there so
+     * later games are appended after the last good record. Each record's frame is checked against
+     * the bytes left in the file before it is read, so only a torn last record is cut off. A
+     * record whose frame is intact but whose contents end early is skipped, and the records after
+     * it are still read. A file that is not a log is emptied
+     * @throws IOException
+     * If the file exists but cannot be read or cut off
+     */
+    private void load() throws IOException {
+        if (!file.exists()) return;
+
+        long fileLength = file.length();
+        long goodLength = 0;
+        InputStream stream = new FileInputStream(file);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() == MAGIC) {
+                goodLength = 4;
+                CRC32 crc = new CRC32();
+                byte[] record = new byte[256];
+                while (fileLength - goodLength >= 4) {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE || 4L + length + 4 > fileLength - goodLength) break;
+                    if (length > record.length) record = new byte[length];
+                    in.readFully(record, 0, length);
+                    crc.reset();
+                    crc.update(record, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) break;
+                    try {
+                        synchronized (this) {
+                            readRecord(new DataInputStream(new ByteArrayInputStream(record, 0, length)));
+                        }
+                    } catch (EOFException e) {
+                        // The record is shorter than its type needs, the framing around it is sound
+                    }
+                    goodLength += 4 + length + 4;
+                }
+            }
+        } catch (EOFException e) {
+            // The file is shorter than its header, or was cut short while it was being read
+        } finally {
+            stream.close();
+        }
+
+        if (goodLength < file.length()) {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(goodLength);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    private void readRecord(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if (type == GAME || type == HISTORY_GAME) {
+            GameRecord game = readGame(in);
+            if (type == GAME) {
+                addToIndex(game);
+                gamesSinceCompaction++;
+            }
+            addToHistory(game);
+        } else if (type == PLAYER_SUMMARY) {
+            int columns = in.readShort();
+            int rows = in.readShort();
+            String playerId = in.readUTF();
+            int gamesPlayed = in.readInt();
+            int bestScore = in.readInt();
+            PlayerStats player = getBoard(columns, rows).getPlayer(playerId);
+            player.gamesPlayed += gamesPlayed;
+            player.bestScore = Math.max(player.bestScore, bestScore);
+            addGamesPlayed(playerId, gamesPlayed);
+        } else if (type == BOARD_SUMMARY) {
+            int columns = in.readShort();
+            int rows = in.readShort();
+            int gamesPlayed = in.readInt();
+            long totalTurns = in.readLong();
+            BoardStats board = getBoard(columns, rows);
+            board.gamesPlayed += gamesPlayed;
+            board.totalTurns += totalTurns;
+        }
+        // Records of an unknown type are skipped, so a newer log can still be read. Every field of
+        // a record is read before the index is changed, so a record that ends early changes nothing
+    }
+
+    private static GameRecord readGame(DataInputStream in) throws IOException {
+        long timeMillis = in.readLong();
+        int columns = in.readShort();
+        int rows = in.readShort();
+        int turnCount = in.readInt();
+        int playerCount = in.readByte();
+        String[] playerIds = new String[playerCount];
+        int[] scores = new int[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            playerIds[i] = in.readUTF();
+            scores[i] = in.readInt();
+        }
+        return new GameRecord(timeMillis, columns, rows, turnCount, playerIds, scores);
+    }
+
+    /**
+     * Record a finished game. The game is added to the index and appended to the log in the
+     * background, and the log is compacted if enough games have been appended since it was last
+     * compacted
+     * @param gameEngine
+     * The game, which must be over
+     * @param timeMillis
+     * The time the game finished, in milliseconds since the epoch
+     */
+    void recordGame(GameEngine gameEngine, long timeMillis) {
+        int playerCount = gameEngine.getPlayerCount();
+        String[] playerIds = new String[playerCount];
+        int[] scores = new int[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            Player player = gameEngine.getPlayer(i);
+            playerIds[i] = player.getPlayerId();
+            scores[i] = player.getCurrentScore();
+        }
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        final GameRecord game = new GameRecord(timeMillis, gameBoard.getColumns(), gameBoard.getRows(),
+                gameEngine.getTurnCount(), playerIds, scores);
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                store(game);
+            }
+        });
+    }
+
+    /**
+     * Add a game to the index and the log, on the writer thread. The compacted log is encoded
+     * under the lock, so it matches the index, and written after it has been released
+     */
+    private void store(GameRecord game) {
+        byte[] record = encodeRecord(GAME, game);
+        byte[] log = null;
+        synchronized (this) {
+            addToIndex(game);
+            addToHistory(game);
+            if (++gamesSinceCompaction > COMPACTION_THRESHOLD) {
+                gamesSinceCompaction = 0;
+                log = encodeCompactedLog();
+            }
+        }
+        if (log == null || !replaceLog(log)) append(record);
+    }
+
+    private void addToIndex(GameRecord game) {
+        BoardStats board = getBoard(game.columns, game.rows);
+        board.gamesPlayed++;
+        board.totalTurns += game.turnCount;
+        for (int i = 0; i < game.playerIds.length; i++) {
+            PlayerStats player = board.getPlayer(game.playerIds[i]);
+            player.gamesPlayed++;
+            player.bestScore = Math.max(player.bestScore, game.scores[i]);
+            addGamesPlayed(game.playerIds[i], 1);
+        }
+    }
+
+    private void addToHistory(GameRecord game) {
+        if (recentGames.size() == HISTORY_SIZE) recentGames.removeFirst();
+        recentGames.addLast(game);
+    }
+
+    private void addGamesPlayed(String playerId, int games) {
+        Integer gamesPlayed = gamesPlayedByPlayer.get(playerId);
+        gamesPlayedByPlayer.put(playerId, gamesPlayed == null ? games : gamesPlayed + games);
+    }
+
+    private BoardStats getBoard(int columns, int rows) {
+        Integer key = columns << 16 | rows;
+        BoardStats board = boards.get(key);
+        if (board == null) {
+            board = new BoardStats(columns, rows);
+            boards.put(key, board);
+        }
+        return board;
+    }
+
+    /**
+     * Get the number of games a player has played, on any size of board
+     * @param playerId
+     * The name of the player
+     * @return
+     * The number of games played
+     */
+    synchronized int getGamesPlayed(String playerId) {
+        Integer gamesPlayed = gamesPlayedByPlayer.get(playerId);
+        return gamesPlayed == null ? 0 : gamesPlayed;
+    }
+
+    /**
+     * Get the number of games a player has played on one size of board
+     * @param playerId
+     * The name of the player
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @return
+     * The number of games played
+     */
+    synchronized int getGamesPlayed(String playerId, int columns, int rows) {
+        BoardStats board = boards.get(columns << 16 | rows);
+        PlayerStats player = board == null ? null : board.players.get(playerId);
+        return player == null ? 0 : player.gamesPlayed;
+    }
+
+    /**
+     * Get the number of games played on one size of board, by anyone
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @return
+     * The number of games played
+     */
+    synchronized int getGamesPlayed(int columns, int rows) {
+        BoardStats board = boards.get(columns << 16 | rows);
+        return board == null ? 0 : board.gamesPlayed;
+    }
+
+    /**
+     * Get a player's best score on one size of board
+     * @param playerId
+     * The name of the player
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @return
+     * The highest score of any game the player has played on the board, or -1 if they have not
+     * played on it
+     */
+    synchronized int getBestScore(String playerId, int columns, int rows) {
+        BoardStats board = boards.get(columns << 16 | rows);
+        PlayerStats player = board == null ? null : board.players.get(playerId);
+        return player == null ? -1 : player.bestScore;
+    }
+
+    /**
+     * Get the average number of turns a game takes on one size of board
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @return
+     * The average number of turns, or 0 if no games have been played on the board
+     */
+    synchronized double getAverageTurns(int columns, int rows) {
+        BoardStats board = boards.get(columns << 16 | rows);
+        return board == null || board.gamesPlayed == 0 ? 0 : (double) board.totalTurns / board.gamesPlayed;
+    }
+
+    /**
+     * Get the players who have played on one size of board, ranked by their best score on it
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @return
+     * The names of the players, highest best score first, or an empty list if no games have been
+     * played on the board
+     */
+    synchronized List<String> getLeaderboard(int columns, int rows) {
+        BoardStats board = boards.get(columns << 16 | rows);
+        if (board == null) return Collections.emptyList();
+        List<PlayerStats> players = new ArrayList<>(board.players.values());
+        Collections.sort(players, BEST_SCORE_FIRST);
+        List<String> leaderboard = new ArrayList<>(players.size());
+        for (PlayerStats player : players) {
+            leaderboard.add(player.playerId);
+        }
+        return leaderboard;
+    }
+
+    /**
+     * Get the most recent games, up to HISTORY_SIZE of them
+     * @return
+     * The games, oldest first
+     */
+    synchronized List<GameRecord> getRecentGames() {
+        return new ArrayList<>(recentGames);
+    }
+
+    /**
+     * Close the log once the games waiting to be written have been written. It is reopened when
+     * the next game is recorded
+     */
+    void close() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeLog();
+            }
+        });
+    }
+
+    /**
+     * Wait for the log to be loaded and every game recorded so far to be indexed and written, for
+     * example before the log is read by something else
+     * @param timeoutMillis
+     * The longest time to wait, in milliseconds
+     * @return
+     * True if every game recorded so far has been written, false if the wait timed out or was
+     * interrupted
+     */
+    boolean awaitWrites(long timeoutMillis) {
+        Future<?> written = writer.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        try {
+            written.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private void closeLog() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Everything written has already been handed to the operating system
+        }
+        out = null;
+    }
+
+    /**
+     * Encode the whole log as compacted: a summary of every player on every board and of every
+     * board, with the recent games as history that is not counted again
+     * @return
+     * The compacted log
+     */
+    private byte[] encodeCompactedLog() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(MAGIC);
+            for (BoardStats board : boards.values()) {
+                for (PlayerStats player : board.players.values()) {
+                    ByteArrayOutputStream summary = new ByteArrayOutputStream();
+                    DataOutputStream summaryData = new DataOutputStream(summary);
+                    summaryData.writeByte(PLAYER_SUMMARY);
+                    summaryData.writeShort(board.columns);
+                    summaryData.writeShort(board.rows);
+                    summaryData.writeUTF(player.playerId);
+                    summaryData.writeInt(player.gamesPlayed);
+                    summaryData.writeInt(player.bestScore);
+                    data.write(frame(summary.toByteArray()));
+                }
+                ByteArrayOutputStream summary = new ByteArrayOutputStream();
+                DataOutputStream summaryData = new DataOutputStream(summary);
+                summaryData.writeByte(BOARD_SUMMARY);
+                summaryData.writeShort(board.columns);
+                summaryData.writeShort(board.rows);
+                summaryData.writeInt(board.gamesPlayed);
+                summaryData.writeLong(board.totalTurns);
+                data.write(frame(summary.toByteArray()));
+            }
+            for (GameRecord game : recentGames) {
+                data.write(encodeRecord(HISTORY_GAME, game));
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encode a game as a record of the log, framed with its length and CRC32
+     * @param type
+     * GAME for a game that is counted in the statistics, HISTORY_GAME for one that is only history
+     * @param game
+     * The game
+     * @return
+     * The framed record
+     */
+    private static byte[] encodeRecord(byte type, GameRecord game) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeByte(type);
+            data.writeLong(game.timeMillis);
+            data.writeShort(game.columns);
+            data.writeShort(game.rows);
+            data.writeInt(game.turnCount);
+            data.writeByte(game.playerIds.length);
+            for (int i = 0; i < game.playerIds.length; i++) {
+                data.writeUTF(game.playerIds[i]);
+                data.writeInt(game.scores[i]);
+            }
+            return frame(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] frame(byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.length + 8);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(record.length);
+        data.write(record);
+        data.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Append a record to the log, on the writer thread. The log is written but not synced, so a
+     * record survives the process dying, and a record torn by a power loss is dropped on load
+     * @param record
+     * The framed record
+     */
+    private void append(byte[] record) {
+        try {
+            if (out == null) {
+                boolean isNew = !file.exists() || file.length() == 0;
+                out = new FileOutputStream(file, true);
+                if (isNew) new DataOutputStream(out).writeInt(MAGIC);
+            }
+            out.write(record);
+        } catch (IOException e) {
+            // The game is still in the index, it is written with the next compaction
+        }
+    }
+
+    /**
+     * Replace the log with a compacted one, on the writer thread. The compacted log is written to
+     * a temporary file and synced before it is renamed over the log, so the log is never left
+     * half written
+     * @param log
+     * The whole compacted log
+     * @return
+     * True if the log was replaced, false if the old log was kept
+     */
+    private boolean replaceLog(byte[] log) {
+        File compacted = new File(file.getPath() + ".tmp");
+        try {
+            closeLog();
+            FileOutputStream compactedOut = new FileOutputStream(compacted);
+            try {
+                compactedOut.write(log);
+                compactedOut.getFD().sync();
+            } finally {
+                compactedOut.close();
+            }
+            if (compacted.renameTo(file)) return true;
+        } catch (IOException e) {
+            // The old log is kept and compaction is tried again after the next games
+        }
+        compacted.delete();
+        return false;
+    }
+}
@@ -0,0 +1,182 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The device's side of a networked game. The client asks the SyncHost to join a game and to make
+ * moves, and passes on what the host decides to a Listener: the seed and seat when the game starts,
+ * then every accepted move in order. The device plays the moves it is given on its own GameEngine,
+ * dealt from the seed, rather than playing its own moves straight away, so every device's board
+ * stays the same as the host's.
+ * The listener is called on the transport's thread
+ */
+class SyncClient {
+
+    /**
+     * Receives what the host has decided
+     */
+    interface Listener {
+
+        /**
+         * Every seat in the game has been taken and the game has started. The board is dealt with
+         * GameEngine.newGame(columns, rows, seed) after setting the number of players
+         * @param columns
+         * The number of cards in each row of the board
+         * @param rows
+         * The number of cards in each column of the board
+         * @param playerCount
+         * The number of players in the game
+         * @param seed
+         * The seed to shuffle the board with
+         * @param seat
+         * The number of the player this device plays as, from zero for player one
+         */
+        void onGameStarted(int columns, int rows, int playerCount, long seed, int seat);
+
+        /**
+         * A move has been accepted by the host and is to be played. The turn is resolved as soon as
+         * its second card has been played
+         * @param sequence
+         * The sequence number of the move, starting from zero
+         * @param cellIndex
+         * The position of the card turned up
+         */
+        void onMove(int sequence, int cellIndex);
+
+        /**
+         * A move asked for by this device has been rejected, because it was not this device's
+         * turn, the move was not legal, or another move was accepted first
+         * @param sequence
+         * The sequence number the move was asked for with
+         */
+        void onMoveRejected(int sequence);
+
+        /**
+         * The game has ended early because a player has left, or the connection has closed
+         */
+        void onGameAbandoned();
+    }
+
+    private final Listener listener;
+    private final ByteBuffer out = ByteBuffer.allocate(SyncProtocol.MAX_MESSAGE_SIZE);
+    private volatile SyncConnection connection;
+    private volatile boolean isClosed;
+    private int seat = -1;
+    private int nextSequence;
+
+    /**
+     * Constructor. The client is connected to a host by a transport, such as
+     * LoopbackTransport.connect or SocketSyncConnection.open
+     * @param listener
+     * The listener to be told what the host decides
+     */
+    SyncClient(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set the connection to the host, called by the transport that connects the client, possibly
+     * on its own thread. A connection that arrives after the client has been closed is closed
+     * @param connection
+     * The connection to send messages to the host on
+     */
+    void setConnection(SyncConnection connection) {
+        this.connection = connection;
+        if (isClosed) connection.close();
+    }
+
+    /**
+     * Ask to join a game. The listener is told once the game starts
+     * @param gameId
+     * The game to join, agreed between the players beforehand
+     * @param playerCount
+     * The number of players in the game
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     */
+    synchronized void join(long gameId, int playerCount, int columns, int rows) {
+        seat = -1;
+        nextSequence = 0;
+        out.clear();
+        SyncProtocol.putJoin(out, gameId, playerCount, columns, rows);
+        send();
+    }
+
+    /**
+     * Ask to turn up a card. The move is played once the host accepts it and the listener is
+     * told of it, or the listener is told it has been rejected
+     * @param cellIndex
+     * The position of the card
+     * @return
+     * The sequence number the move was asked for with
+     */
+    synchronized int requestMove(int cellIndex) {
+        out.clear();
+        SyncProtocol.putMove(out, nextSequence, cellIndex);
+        send();
+        return nextSequence;
+    }
+
+    /**
+     * Get the seat this device plays in
+     * @return
+     * The number of the player this device plays as, or -1 if the game has not started
+     */
+    synchronized int getSeat() {
+        return seat;
+    }
+
+    /**
+     * Close the connection to the host, abandoning the game. If the transport has not connected
+     * the client yet, the connection is closed as soon as it arrives
+     */
+    void close() {
+        isClosed = true;
+        SyncConnection connection = this.connection;
+        if (connection != null) connection.close();
+    }
+
+    /**
+     * Handle a message from the host, called by the transport
+     * @param message
+     * The buffer holding exactly one message between its position and limit
+     */
+    void onMessage(ByteBuffer message) {
+        byte type = message.get();
+        if (type == SyncProtocol.START) {
+            long seed = message.getLong();
+            int columns = message.getShort();
+            int rows = message.getShort();
+            int playerCount = message.get();
+            int seat = message.get();
+            synchronized (this) {
+                this.seat = seat;
+                nextSequence = 0;
+            }
+            listener.onGameStarted(columns, rows, playerCount, seed, seat);
+        } else if (type == SyncProtocol.MOVE) {
+            int sequence = message.getInt();
+            int cellIndex = message.getInt();
+            synchronized (this) {
+                nextSequence = sequence + 1;
+            }
+            listener.onMove(sequence, cellIndex);
+        } else if (type == SyncProtocol.REJECT) {
+            listener.onMoveRejected(message.getInt());
+        } else if (type == SyncProtocol.ABANDON) {
+            listener.onGameAbandoned();
+        }
+    }
+
+    /**
+     * Handle the connection having closed, called by the transport
+     */
+    void onClosed() {
+        listener.onGameAbandoned();
+    }
+
+    private void send() {
+        out.flip();
+        connection.send(out);
+    }
+}
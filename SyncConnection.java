@@ -0,0 +1,21 @@
+import java.nio.ByteBuffer;
+
+/**
+ * One end of a connection between a device and a SyncHost, over whatever transport carries the
+ * messages: a socket, or LoopbackTransport within one process
+ */
+interface SyncConnection {
+
+    /**
+     * Send a message. The message is copied or written before this returns, so the buffer can be
+     * reused straight away
+     * @param message
+     * The buffer holding exactly one SyncProtocol message between its position and limit
+     */
+    void send(ByteBuffer message);
+
+    /**
+     * Close the connection. The other end is told it has been closed
+     */
+    void close();
+}
@@ -0,0 +1,197 @@
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs networked games. Devices join a game by its id, and once every seat is taken the host
+ * chooses the seed of the shuffle and sends it to every device. From then on the host keeps its
+ * own GameEngine for each game, and only accepts a move if it comes from the device whose turn it
+ * is, has the next sequence number and is a legal move. Accepted moves are sent to every device in
+ * the game, including the one that made it, so every device plays the same moves in the same order
+ * and resolves each turn as soon as its second card is known.
+ * The host does no I/O of its own and keeps no thread: a transport passes it each message and
+ * closed connection. It must only be used from one thread at a time, which SyncServer's selector
+ * thread and LoopbackTransport both ensure
+ */
+class SyncHost {
+
+    /**
+     * The most cards a hosted game's board may have. Every game keeps its own board on the host,
+     * so a device asking for a bigger one is disconnected rather than let it run the host out of
+     * memory
+     */
+    static final int MAX_CARDS = 128 * 128;
+
+    /**
+     * A game waiting for players or being played
+     */
+    private static class HostedGame {
+        final long gameId;
+        final int playerCount;
+        final int columns;
+        final int rows;
+        final SyncConnection[] seats;
+        int seatsTaken;
+        GameEngine gameEngine;
+        int nextSequence;
+
+        HostedGame(long gameId, int playerCount, int columns, int rows) {
+            this.gameId = gameId;
+            this.playerCount = playerCount;
+            this.columns = columns;
+            this.rows = rows;
+            seats = new SyncConnection[playerCount];
+        }
+    }
+
+    private final Map<Long, HostedGame> waitingGames = new HashMap<>();
+    private final Map<SyncConnection, HostedGame> gamesByConnection = new HashMap<>();
+    private final Random seedGenerator;
+    private final ByteBuffer out = ByteBuffer.allocate(SyncProtocol.MAX_MESSAGE_SIZE);
+
+    private int gamesStarted;
+    private int gamesFinished;
+
+    /**
+     * Constructor
+     * @param seedGenerator
+     * The source of the seeds each game's board is shuffled with
+     */
+    SyncHost(Random seedGenerator) {
+        this.seedGenerator = seedGenerator;
+    }
+
+    /**
+     * Handle a message from a device. A message that breaks the protocol closes the connection
+     * @param connection
+     * The connection the message arrived on
+     * @param message
+     * The buffer holding exactly one message between its position and limit
+     */
+    void onMessage(SyncConnection connection, ByteBuffer message) {
+        byte type = message.get();
+        if (type == SyncProtocol.JOIN) {
+            join(connection, message.getLong(), message.get(), message.getShort(), message.getShort());
+        } else if (type == SyncProtocol.MOVE) {
+            move(connection, message.getInt(), message.getInt());
+        } else {
+            connection.close();
+        }
+    }
+
+    /**
+     * Handle a connection having closed. The device's game, if it has one, is abandoned and the
+     * other devices in it are told
+     * @param connection
+     * The connection that has closed
+     */
+    void onClosed(SyncConnection connection) {
+        HostedGame game = gamesByConnection.remove(connection);
+        if (game == null) return;
+
+        if (game.gameEngine == null) waitingGames.remove(game.gameId);
+        for (SyncConnection seat : game.seats) {
+            if (seat == null || seat == connection) continue;
+            gamesByConnection.remove(seat);
+            out.clear();
+            SyncProtocol.putAbandon(out);
+            send(seat);
+        }
+    }
+
+    /**
+     * Get the number of games that have started since the host was created
+     * @return
+     * The number of games started
+     */
+    int getGamesStarted() {
+        return gamesStarted;
+    }
+
+    /**
+     * Get the number of games that have been played to the end since the host was created
+     * @return
+     * The number of games finished
+     */
+    int getGamesFinished() {
+        return gamesFinished;
+    }
+
+    private void join(SyncConnection connection, long gameId, int playerCount, int columns, int rows) {
+        if (gamesByConnection.containsKey(connection)) {
+            connection.close();
+            return;
+        }
+        HostedGame game = waitingGames.get(gameId);
+        if (game == null) {
+            try {
+                GameBoard.checkDimensions(columns, rows);
+            } catch (IllegalArgumentException e) {
+                connection.close();
+                return;
+            }
+            if ((long) columns * rows > MAX_CARDS || playerCount < 1 || playerCount > GameEngine.MAX_PLAYERS) {
+                connection.close();
+                return;
+            }
+            game = new HostedGame(gameId, playerCount, columns, rows);
+            waitingGames.put(gameId, game);
+        } else if (game.playerCount != playerCount || game.columns != columns || game.rows != rows) {
+            connection.close();
+            return;
+        }
+
+        game.seats[game.seatsTaken++] = connection;
+        gamesByConnection.put(connection, game);
+        if (game.seatsTaken == game.playerCount) start(game);
+    }
+
+    private void start(HostedGame game) {
+        waitingGames.remove(game.gameId);
+        long seed = seedGenerator.nextLong();
+        game.gameEngine = new GameEngine(game.columns, game.rows, game.playerCount, new Random(seed));
+        gamesStarted++;
+
+        for (int seat = 0; seat < game.playerCount; seat++) {
+            out.clear();
+            SyncProtocol.putStart(out, seed, game.columns, game.rows, game.playerCount, seat);
+            send(game.seats[seat]);
+        }
+    }
+
+    private void move(SyncConnection connection, int sequence, int cellIndex) {
+        HostedGame game = gamesByConnection.get(connection);
+        if (game == null || game.gameEngine == null) {
+            connection.close();
+            return;
+        }
+        GameEngine gameEngine = game.gameEngine;
+        if (sequence != game.nextSequence || game.seats[gameEngine.getCurrentPlayerIndex()] != connection
+                || !gameEngine.flip(cellIndex)) {
+            out.clear();
+            SyncProtocol.putReject(out, sequence);
+            send(connection);
+            return;
+        }
+        game.nextSequence++;
+        if (gameEngine.isTurnPending()) gameEngine.resolveTurn();
+
+        for (SyncConnection seat : game.seats) {
+            out.clear();
+            SyncProtocol.putMove(out, sequence, cellIndex);
+            send(seat);
+        }
+        if (gameEngine.isGameOver()) {
+            gamesFinished++;
+            for (SyncConnection seat : game.seats) {
+                gamesByConnection.remove(seat);
+            }
+        }
+    }
+
+    private void send(SyncConnection connection) {
+        out.flip();
+        connection.send(out);
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays many networked games at once between bots that turn up random face down cards, and reports
+ * how many games per second the SyncHost finished and how long moves took from being asked for to
+ * being accepted. Every bot keeps its own GameEngine dealt from the game's seed and plays the
+ * accepted moves on it, as a device does, so a bot whose board disagrees with the host's fails the
+ * test.
+ * Over the loopback transport every game is played on one thread with no network, which measures
+ * the host itself. Over TCP each bot has its own socket to a SyncServer in the same process
+ */
+class SyncLoadTest {
+
+    private static final int LATENCY_BUCKET_NANOS = 10000;
+
+    /**
+     * Counts finished games and moves, and keeps a histogram of move latency in buckets of
+     * LATENCY_BUCKET_NANOS, the last bucket holding everything slower
+     */
+    private static class Stats {
+        final long[] latencyCounts = new long[100000];
+        final CountDownLatch gamesLeft;
+        long moves;
+        long rejectedMoves;
+        long abandonedGames;
+
+        Stats(int games) {
+            gamesLeft = new CountDownLatch(games);
+        }
+
+        synchronized void recordMove(long latencyNanos) {
+            moves++;
+            latencyCounts[(int) Math.min(latencyNanos / LATENCY_BUCKET_NANOS, latencyCounts.length - 1)]++;
+        }
+
+        synchronized long getLatencyPercentileNanos(double percentile) {
+            long target = (long) Math.ceil(moves * percentile);
+            long seen = 0;
+            for (int i = 0; i < latencyCounts.length; i++) {
+                seen += latencyCounts[i];
+                if (seen >= target) return (i + 1L) * LATENCY_BUCKET_NANOS;
+            }
+            return latencyCounts.length * (long) LATENCY_BUCKET_NANOS;
+        }
+    }
+
+    /**
+     * A player in one game, which plays a random face down card whenever it is their turn
+     */
+    private static class Bot implements SyncClient.Listener {
+        final SyncClient client = new SyncClient(this);
+        final Stats stats;
+        GameEngine gameEngine;
+        Random random;
+        int seat;
+        long requestedAt;
+
+        Bot(Stats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void onGameStarted(int columns, int rows, int playerCount, long seed, int seat) {
+            this.seat = seat;
+            random = new Random(seed + seat);
+            gameEngine = new GameEngine(columns, rows, new Random());
+            gameEngine.setPlayerCount(playerCount);
+            gameEngine.newGame(columns, rows, seed);
+            moveIfMyTurn();
+        }
+
+        @Override
+        public void onMove(int sequence, int cellIndex) {
+            if (!gameEngine.flip(cellIndex)) {
+                throw new IllegalStateException("Move " + sequence + " cannot be played, the boards differ");
+            }
+            if (gameEngine.isTurnPending()) gameEngine.resolveTurn();
+            if (requestedAt != 0) {
+                stats.recordMove(System.nanoTime() - requestedAt);
+                requestedAt = 0;
+            }
+
+            if (!gameEngine.isGameOver()) {
+                moveIfMyTurn();
+            } else if (seat == 0) {
+                stats.gamesLeft.countDown();
+            }
+        }
+
+        @Override
+        public void onMoveRejected(int sequence) {
+            synchronized (stats) {
+                stats.rejectedMoves++;
+            }
+        }
+
+        @Override
+        public void onGameAbandoned() {
+            if (gameEngine != null && gameEngine.isGameOver()) return;
+            synchronized (stats) {
+                stats.abandonedGames++;
+            }
+            if (seat == 0) stats.gamesLeft.countDown();
+        }
+
+        private void moveIfMyTurn() {
+            if (gameEngine.getCurrentPlayerIndex() != seat) return;
+            int cellIndex = RandomStrategy.chooseFaceDownCard(gameEngine.getGameBoard(), random);
+            requestedAt = System.nanoTime();
+            client.requestMove(cellIndex);
+        }
+    }
+
+    /**
+     * Runs a load test from the command line and prints the result
+     * @param args
+     * [games players columns rows transport], defaulting to 10000 2 4 4 loopback. The transport is
+     * "loopback" or "tcp"
+     * @throws IOException
+     * If the TCP server or a connection to it cannot be opened
+     * @throws InterruptedException
+     * If interrupted while waiting for the TCP games to finish
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int columns = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int rows = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        boolean isTcp = args.length > 4 && args[4].equals("tcp");
+
+        SyncHost syncHost = new SyncHost(new Random(1));
+        Stats stats = new Stats(games);
+        Bot[] bots = new Bot[games * players];
+        for (int i = 0; i < bots.length; i++) {
+            bots[i] = new Bot(stats);
+        }
+
+        long start;
+        if (isTcp) {
+            SyncServer server = new SyncServer(syncHost, 0);
+            Thread serverThread = new Thread(server, "SyncServer");
+            serverThread.start();
+            for (Bot bot : bots) {
+                SocketSyncConnection.open("localhost", server.getPort(), bot.client);
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < bots.length; i++) {
+                bots[i].client.join(i / players, players, columns, rows);
+            }
+            if (!stats.gamesLeft.await(10, TimeUnit.MINUTES)) {
+                System.out.println("Timed out with " + stats.gamesLeft.getCount() + " games unfinished");
+            }
+            server.close();
+        } else {
+            LoopbackTransport transport = new LoopbackTransport(syncHost);
+            for (Bot bot : bots) {
+                transport.connect(bot.client);
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < bots.length; i++) {
+                bots[i].client.join(i / players, players, columns, rows);
+            }
+            transport.pump();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        synchronized (stats) {
+            System.out.println(String.format(Locale.ROOT,
+                    "games: %d finished, %d abandoned, %d concurrent over %s%n"
+                            + "moves: %d, %d rejected%n"
+                            + "throughput: %.0f games/s, %.0f moves/s%n"
+                            + "move latency: p50 %.2fms, p99 %.2fms",
+                    syncHost.getGamesFinished(), stats.abandonedGames, games, isTcp ? "tcp" : "loopback",
+                    stats.moves, stats.rejectedMoves,
+                    syncHost.getGamesFinished() * 1e9 / elapsedNanos, stats.moves * 1e9 / elapsedNanos,
+                    stats.getLatencyPercentileNanos(0.5) / 1e6, stats.getLatencyPercentileNanos(0.99) / 1e6));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The messages sent between the devices in a networked game and the SyncHost running it. A game
+ * is never sent as a whole: the host chooses the seed of the shuffle, which every device uses to
+ * deal the same board, and from then on only moves are sent.
+ * Every message starts with a type byte, and the type decides the length of the rest:
+ * - JOIN, device to host: game id (8), number of players (1), columns (2), rows (2)
+ * - START, host to device: seed (8), columns (2), rows (2), number of players (1), seat (1)
+ * - MOVE, both ways: sequence number (4), cell index (4)
+ * - REJECT, host to device: sequence number of the rejected move (4)
+ * - ABANDON, host to device: no body, a player has left and the game is over
+ * Moves are numbered from zero in the order the host accepted them. A device asks for a move with
+ * the sequence number it expects the move to get, and the host only accepts it if that is the
+ * next number, so a repeated or out of date request is rejected rather than played twice
+ */
+final class SyncProtocol {
+
+    static final byte JOIN = 1;
+    static final byte START = 2;
+    static final byte MOVE = 3;
+    static final byte REJECT = 4;
+    static final byte ABANDON = 5;
+
+    static final int MAX_MESSAGE_SIZE = 15;
+
+    private SyncProtocol() {
+    }
+
+    /**
+     * Get the size of a message of the given type
+     * @param type
+     * The first byte of the message
+     * @return
+     * The size of the whole message including its type byte, or -1 if the type is not known
+     */
+    static int messageSize(byte type) {
+        switch (type) {
+            case JOIN: return 14;
+            case START: return 15;
+            case MOVE: return 9;
+            case REJECT: return 5;
+            case ABANDON: return 1;
+            default: return -1;
+        }
+    }
+
+    /**
+     * Write a request to join a game. Devices asking for the same game id with the same
+     * dimensions and number of players are seated together, and the game starts once every seat
+     * is taken
+     * @param out
+     * The buffer to write the message into
+     * @param gameId
+     * The game to join, agreed between the players beforehand
+     * @param playerCount
+     * The number of players in the game
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     */
+    static void putJoin(ByteBuffer out, long gameId, int playerCount, int columns, int rows) {
+        out.put(JOIN).putLong(gameId).put((byte) playerCount).putShort((short) columns).putShort((short) rows);
+    }
+
+    /**
+     * Write the start of a game
+     * @param out
+     * The buffer to write the message into
+     * @param seed
+     * The seed every device shuffles the board with
+     * @param columns
+     * The number of cards in each row of the board
+     * @param rows
+     * The number of cards in each column of the board
+     * @param playerCount
+     * The number of players in the game
+     * @param seat
+     * The number of the player the receiving device plays as, from zero for player one
+     */
+    static void putStart(ByteBuffer out, long seed, int columns, int rows, int playerCount, int seat) {
+        out.put(START).putLong(seed).putShort((short) columns).putShort((short) rows)
+                .put((byte) playerCount).put((byte) seat);
+    }
+
+    /**
+     * Write a move
+     * @param out
+     * The buffer to write the message into
+     * @param sequence
+     * The sequence number of the move
+     * @param cellIndex
+     * The position of the card turned up
+     */
+    static void putMove(ByteBuffer out, int sequence, int cellIndex) {
+        out.put(MOVE).putInt(sequence).putInt(cellIndex);
+    }
+
+    /**
+     * Write the rejection of a move
+     * @param out
+     * The buffer to write the message into
+     * @param sequence
+     * The sequence number the move was asked for with
+     */
+    static void putReject(ByteBuffer out, int sequence) {
+        out.put(REJECT).putInt(sequence);
+    }
+
+    /**
+     * Write the end of a game that a player has left
+     * @param out
+     * The buffer to write the message into
+     */
+    static void putAbandon(ByteBuffer out) {
+        out.put(ABANDON);
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Serves a SyncHost over TCP. Every connection is handled by one thread with a non-blocking
+ * Selector, so the number of games is limited by memory and file descriptors rather than threads:
+ * each connection holds a socket, a small read buffer and a write buffer that only grows while
+ * the device is not reading. A connection whose socket fails while the host is sending to it is
+ * only closed once the host has returned, so the host is never told a connection has closed in
+ * the middle of sending to the seats of a game
+ */
+class SyncServer implements Runnable {
+
+    /**
+     * A device's connection. Messages sent to it are written straight away if the socket will
+     * take them, otherwise they wait in the write buffer until the selector says it is writable.
+     * Once writing has failed nothing more is sent, and the connection waits in failedConnections
+     * to be closed
+     */
+    private class ChannelConnection implements SyncConnection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(4 * SyncProtocol.MAX_MESSAGE_SIZE);
+        ByteBuffer out = ByteBuffer.allocate(4 * SyncProtocol.MAX_MESSAGE_SIZE);
+        boolean isClosed;
+        boolean isFailed;
+
+        ChannelConnection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        @Override
+        public void send(ByteBuffer message) {
+            if (isClosed || isFailed) return;
+            if (out.remaining() < message.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + message.remaining()));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            out.put(message);
+            if (!flush()) {
+                isFailed = true;
+                failedConnections.add(this);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (isClosed) return;
+            isClosed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The connection is gone either way
+            }
+            syncHost.onClosed(this);
+        }
+
+        void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.hasRemaining() && !isClosed && !isFailed) {
+                int size = SyncProtocol.messageSize(in.get(in.position()));
+                if (size < 0) {
+                    close();
+                    return;
+                }
+                if (in.remaining() < size) break;
+
+                int limit = in.limit();
+                int end = in.position() + size;
+                in.limit(end);
+                syncHost.onMessage(this, in);
+                in.limit(limit).position(end);
+            }
+            in.compact();
+        }
+
+        void write() {
+            if (!flush()) close();
+        }
+
+        /**
+         * Write as much of the write buffer as the socket will take
+         * @return
+         * False if the socket has failed
+         */
+        private boolean flush() {
+            out.flip();
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                out.compact();
+                return false;
+            }
+            out.compact();
+            key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            return true;
+        }
+    }
+
+    private final SyncHost syncHost;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ArrayList<ChannelConnection> failedConnections = new ArrayList<>();
+    private volatile boolean isClosing;
+
+    /**
+     * Open the server's socket. Connections are accepted once run is called
+     * @param syncHost
+     * The host to run the games
+     * @param port
+     * The port to listen on, or 0 for any free port
+     * @throws IOException
+     * If the socket cannot be opened
+     */
+    SyncServer(SyncHost syncHost, int port) throws IOException {
+        this.syncHost = syncHost;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Get the port the server is listening on
+     * @return
+     * The port
+     */
+    int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Accept connections and handle their messages until close is called, then close every
+     * connection, the socket and the selector
+     */
+    @Override
+    public void run() {
+        try {
+            while (!isClosing) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ChannelConnection connection = (ChannelConnection) key.attachment();
+                        if (key.isReadable()) connection.read();
+                        if (key.isValid() && key.isWritable()) connection.write();
+                    }
+                    closeFailedConnections();
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // The selector has failed, everything is closed below
+        }
+        closeAll();
+    }
+
+    /**
+     * Stop the server. The thread running it is woken, closes its socket and every connection,
+     * telling the host each connection has closed, and returns from run
+     */
+    void close() {
+        isClosing = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Close the connections whose socket failed while the host was sending to them. Closing one
+     * tells the host, which may send to more connections that then fail, so this carries on until
+     * there are none left
+     */
+    private void closeFailedConnections() {
+        while (!failedConnections.isEmpty()) {
+            failedConnections.remove(failedConnections.size() - 1).close();
+        }
+    }
+
+    /**
+     * Close every connection, then the socket and the selector, on the thread running the server
+     */
+    private void closeAll() {
+        if (selector.isOpen()) {
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                if (key.attachment() instanceof ChannelConnection) ((ChannelConnection) key.attachment()).close();
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            // Nothing more can be done
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new ChannelConnection(channel, key));
+    }
+
+    /**
+     * Runs a server from the command line until the process is stopped
+     * @param args
+     * [port], defaulting to 7878
+     * @throws IOException
+     * If the socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7878;
+        SyncServer server = new SyncServer(new SyncHost(new Random()), port);
+        System.out.println("Listening on port " + server.getPort());
+        server.run();
+    }
+}
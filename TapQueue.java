@@ -0,0 +1,107 @@
+/**
+ * Collects taps from every pointer on the screen, so several players tapping at once in party mode
+ * all have their moves played, in the order they touched the screen. Taps are added as they are
+ * read from the touch events and then drained together: each is hit-tested against the board and
+ * handed to a Listener, which plays it as a move.
+ * The taps are kept in a fixed size ring buffer of primitive arrays, so nothing is allocated per
+ * tap. A tap that arrives while the buffer is full is dropped and counted. The queue must only be
+ * used from one thread
+ */
+class TapQueue {
+
+    /**
+     * Plays the taps drained from the queue
+     */
+    interface Listener {
+
+        /**
+         * A tap has been taken from the queue
+         * @param cellIndex
+         * The position of the card tapped, or -1 if the tap was outside of the grid
+         * @param eventTimeMillis
+         * The uptime of the tap
+         */
+        void onTap(int cellIndex, long eventTimeMillis);
+    }
+
+    private final int[] xs;
+    private final int[] ys;
+    private final long[] eventTimes;
+    private final int mask;
+    private int head;
+    private int tail;
+    private long droppedCount;
+
+    /**
+     * Constructor
+     * @param capacity
+     * The most taps that can wait to be drained, rounded up to a power of two
+     */
+    TapQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        xs = new int[size];
+        ys = new int[size];
+        eventTimes = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Add a tap to the end of the queue
+     * @param x
+     * The x coordinate of the tap on the board
+     * @param y
+     * The y coordinate of the tap on the board
+     * @param eventTimeMillis
+     * The uptime of the tap
+     * @return
+     * True if the tap was queued, false if the queue was full and the tap was dropped
+     */
+    boolean add(int x, int y, long eventTimeMillis) {
+        if (tail - head > mask) {
+            droppedCount++;
+            return false;
+        }
+        int slot = tail++ & mask;
+        xs[slot] = x;
+        ys[slot] = y;
+        eventTimes[slot] = eventTimeMillis;
+        return true;
+    }
+
+    /**
+     * Hit-test every queued tap against the board and hand each to the listener, oldest first.
+     * The queue is empty afterwards
+     * @param gameBoard
+     * The board the taps are tested against, see GameBoard.getCellAt
+     * @param tileSize
+     * The width and height of each tile
+     * @param listener
+     * Told about each tap
+     * @return
+     * The number of taps drained
+     */
+    int drain(GameBoard gameBoard, int tileSize, Listener listener) {
+        int drained = tail - head;
+        while (head != tail) {
+            int slot = head++ & mask;
+            listener.onTap(gameBoard.getCellAt(xs[slot], ys[slot], tileSize), eventTimes[slot]);
+        }
+        return drained;
+    }
+
+    /**
+     * Throw away every queued tap, for example when a new game is started
+     */
+    void clear() {
+        head = tail;
+    }
+
+    /**
+     * Get the number of taps dropped because the queue was full
+     * @return
+     * The number of dropped taps since the queue was created
+     */
+    long getDroppedCount() {
+        return droppedCount;
+    }
+}
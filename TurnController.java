@@ -0,0 +1,197 @@
+/**
+ * Drives the turns of a GameEngine from player input. Once the second card of a turn is turned up
+ * both cards stay on show for the reveal delay, then one reusable task resolves the turn. Input
+ * during the reveal is dropped or queued according to the InputPolicy, so however fast moves
+ * arrive there is never more than one resolution scheduled and never a move played on an
+ * unresolved turn.
+ * The controller does not know how time passes: it asks a Scheduler to run the resolution later,
+ * which on Android posts to the view's handler. A reveal delay of zero resolves each turn as soon
+ * as its second card is up, without the scheduler, which is what simulations want.
+ * The controller must only be used from one thread, the one the scheduler runs its tasks on.
+ */
+class TurnController {
+
+    /**
+     * The state of the current turn
+     */
+    enum State {
+        /** Waiting for the first card of a turn */
+        AWAITING_FIRST_CARD,
+        /** Waiting for the second card of a turn */
+        AWAITING_SECOND_CARD,
+        /** Both cards are on show and the turn will be resolved once the reveal delay is over */
+        REVEALING,
+        /** Every pair has been matched */
+        GAME_OVER
+    }
+
+    /**
+     * What to do with a move made while both cards of a turn are on show
+     */
+    enum InputPolicy {
+        /** Ignore the move */
+        DROP,
+        /**
+         * Play the move as the first card of the next turn, once the turn has been resolved. Only
+         * one move is kept, any more during the same reveal are dropped
+         */
+        QUEUE
+    }
+
+    /**
+     * Runs tasks after a delay, on the thread the controller is used from
+     */
+    interface Scheduler {
+
+        /**
+         * Run a task once the delay has passed
+         * @param task
+         * The task to run
+         * @param delayMillis
+         * The delay in milliseconds
+         */
+        void schedule(Runnable task, long delayMillis);
+
+        /**
+         * Stop a scheduled task from running, if it has not run yet
+         * @param task
+         * The task to cancel
+         */
+        void cancel(Runnable task);
+    }
+
+    private final GameEngine gameEngine;
+    private final Scheduler scheduler;
+    private long revealDelayMillis = 500;
+    private InputPolicy inputPolicy = InputPolicy.DROP;
+
+    private State state;
+    private int queuedCellIndex = -1;
+
+    private final Runnable resolveTurnTask = new Runnable() {
+        @Override
+        public void run() {
+            resolveTurn();
+        }
+    };
+
+    /**
+     * Constructor. The controller starts in the state of the engine's current game
+     * @param gameEngine
+     * The game to drive
+     * @param scheduler
+     * Runs the resolution of each turn after the reveal delay
+     */
+    TurnController(GameEngine gameEngine, Scheduler scheduler) {
+        this.gameEngine = gameEngine;
+        this.scheduler = scheduler;
+        reset();
+    }
+
+    /**
+     * Set how long both cards of a turn stay on show before the turn is resolved. Takes effect
+     * from the next turn
+     * @param revealDelayMillis
+     * The delay in milliseconds, or zero to resolve each turn straight away
+     */
+    void setRevealDelay(long revealDelayMillis) {
+        if (revealDelayMillis < 0) throw new IllegalArgumentException("Reveal delay must not be negative");
+        this.revealDelayMillis = revealDelayMillis;
+    }
+
+    /**
+     * Set what happens to moves made while both cards of a turn are on show. The default is to
+     * drop them
+     * @param inputPolicy
+     * The policy for moves made during the reveal
+     */
+    void setInputPolicy(InputPolicy inputPolicy) {
+        this.inputPolicy = inputPolicy;
+    }
+
+    /**
+     * Play a card as the current player's next move
+     * @param cellIndex
+     * The position of the card on the board
+     * @return
+     * True if the card was turned up, false if the move was rejected, dropped or queued
+     */
+    boolean play(int cellIndex) {
+        switch (state) {
+            case REVEALING:
+                if (inputPolicy == InputPolicy.QUEUE && queuedCellIndex < 0) queuedCellIndex = cellIndex;
+                return false;
+            case GAME_OVER:
+                return false;
+            default:
+                if (!gameEngine.flip(cellIndex)) return false;
+                if (state == State.AWAITING_FIRST_CARD) {
+                    state = State.AWAITING_SECOND_CARD;
+                } else {
+                    startReveal();
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Bring the controller in line with a game the engine has just started or restored. Any
+     * scheduled resolution and queued move are cancelled, and a restored turn that has both cards
+     * face up is revealed again from the start of the reveal delay
+     */
+    void reset() {
+        scheduler.cancel(resolveTurnTask);
+        queuedCellIndex = -1;
+        if (gameEngine.isGameOver()) {
+            state = State.GAME_OVER;
+        } else if (gameEngine.isTurnPending()) {
+            startReveal();
+        } else if (gameEngine.getFirstCellIndex() >= 0) {
+            state = State.AWAITING_SECOND_CARD;
+        } else {
+            state = State.AWAITING_FIRST_CARD;
+        }
+    }
+
+    /**
+     * Resolve the turn on show straight away, without waiting for the rest of the reveal delay.
+     * Used when the next move has already been decided elsewhere, such as by a SyncHost. Does
+     * nothing unless both cards of a turn are on show
+     */
+    void resolveNow() {
+        if (state != State.REVEALING) return;
+        scheduler.cancel(resolveTurnTask);
+        resolveTurn();
+    }
+
+    /**
+     * Get the state of the current turn
+     * @return
+     * The state
+     */
+    State getState() {
+        return state;
+    }
+
+    private void startReveal() {
+        state = State.REVEALING;
+        if (revealDelayMillis == 0) {
+            resolveTurn();
+        } else {
+            scheduler.schedule(resolveTurnTask, revealDelayMillis);
+        }
+    }
+
+    /**
+     * Resolve the turn on show, then play the move queued during the reveal, if there is one
+     */
+    private void resolveTurn() {
+        if (state != State.REVEALING) return;
+        gameEngine.resolveTurn();
+        state = gameEngine.isGameOver() ? State.GAME_OVER : State.AWAITING_FIRST_CARD;
+
+        int cellIndex = queuedCellIndex;
+        queuedCellIndex = -1;
+        if (cellIndex >= 0) play(cellIndex);
+    }
+}
@@ -0,0 +1,123 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Drives a TurnController with random moves, passing time, resets, restores and immediate
+ * resolutions, and checks after every operation that the controller agrees with its GameEngine:
+ * never more than one resolution scheduled, one scheduled exactly while both cards of a turn are
+ * on show, no move played during a reveal, and scores that add up to the pairs matched.
+ * Time is simulated by a Scheduler that runs its tasks when the test moves the clock on, so the
+ * run is reproducible from its seed. Run from the command line; a failed check throws an
+ * IllegalStateException
+ */
+class TurnControllerStressTest {
+
+    /**
+     * A scheduler holding at most the one task a controller schedules, run when the clock passes
+     * its time. Scheduling a second task before the first has run or been cancelled fails the test
+     */
+    private static class ManualScheduler implements TurnController.Scheduler {
+        Runnable task;
+        long dueMillis;
+        long nowMillis;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            check(this.task == null, "a second resolution was scheduled");
+            this.task = task;
+            dueMillis = nowMillis + delayMillis;
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            if (this.task == task) this.task = null;
+        }
+
+        void advance(long millis) {
+            nowMillis += millis;
+            if (task != null && nowMillis >= dueMillis) {
+                Runnable due = task;
+                task = null;
+                due.run();
+            }
+        }
+    }
+
+    /**
+     * Runs the stress test and prints how many operations and games were played
+     * @param args
+     * [operations seed], defaulting to 500000 1
+     */
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 1);
+
+        ManualScheduler scheduler = new ManualScheduler();
+        GameEngine gameEngine = new GameEngine(4, 4, new Random(random.nextLong()));
+        TurnController turnController = new TurnController(gameEngine, scheduler);
+        int games = 1;
+        for (int i = 0; i < operations; i++) {
+            int operation = random.nextInt(100);
+            if (operation < 60) {
+                TurnController.State before = turnController.getState();
+                int cellIndex = random.nextInt(gameEngine.getGameBoard().getCardCount() + 2) - 1;
+                boolean isPlayed = turnController.play(cellIndex);
+                check(!isPlayed || before == TurnController.State.AWAITING_FIRST_CARD
+                        || before == TurnController.State.AWAITING_SECOND_CARD, "a move was played in state " + before);
+            } else if (operation < 85) {
+                scheduler.advance(random.nextInt(400));
+            } else if (operation < 90) {
+                turnController.resolveNow();
+            } else if (operation < 93) {
+                turnController.setInputPolicy(random.nextBoolean() ? TurnController.InputPolicy.QUEUE : TurnController.InputPolicy.DROP);
+                turnController.setRevealDelay(random.nextInt(4) == 0 ? 0 : 100 + random.nextInt(500));
+            } else if (operation < 97 || gameEngine.isGameOver()) {
+                int columns = 2 + 2 * random.nextInt(3);
+                int rows = 1 + random.nextInt(4);
+                gameEngine.setPlayerCount(1 + random.nextInt(GameEngine.MAX_PLAYERS));
+                gameEngine.newGame(columns, rows, random.nextLong());
+                turnController.reset();
+                games++;
+            } else {
+                // Restore the game as it is, as the view does when it is recreated
+                GameStateCodec.decode(ByteBuffer.wrap(GameStateCodec.encode(gameEngine)), gameEngine);
+                turnController.reset();
+            }
+            checkAgreement(gameEngine, turnController, scheduler);
+        }
+        System.out.println("TurnControllerStressTest: " + operations + " operations over " + games + " games passed");
+    }
+
+    private static void checkAgreement(GameEngine gameEngine, TurnController turnController, ManualScheduler scheduler) {
+        TurnController.State state = turnController.getState();
+        if (gameEngine.isGameOver()) {
+            check(state == TurnController.State.GAME_OVER, "the game is over but the state is " + state);
+        } else if (gameEngine.isTurnPending()) {
+            check(state == TurnController.State.REVEALING, "a turn is pending but the state is " + state);
+            check(scheduler.task != null, "a turn is on show with no resolution scheduled");
+        } else if (gameEngine.getFirstCellIndex() >= 0) {
+            check(state == TurnController.State.AWAITING_SECOND_CARD, "one card is up but the state is " + state);
+        } else {
+            check(state == TurnController.State.AWAITING_FIRST_CARD, "no card is up but the state is " + state);
+        }
+        if (state != TurnController.State.REVEALING) {
+            check(scheduler.task == null, "a resolution is scheduled in state " + state);
+        }
+
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        int matched = 0;
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            if (gameBoard.isMatched(i)) matched++;
+        }
+        int scoreTotal = 0;
+        for (int i = 0; i < gameEngine.getPlayerCount(); i++) {
+            scoreTotal += gameEngine.getPlayer(i).getCurrentScore();
+        }
+        check(matched == gameBoard.getCardCount() - 2 * gameEngine.getPairsRemaining(), "the matched cards disagree with the pairs remaining");
+        check(scoreTotal * 2 == matched, "the scores do not add up to the pairs matched");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new IllegalStateException(message);
+    }
+}
@@ -0,0 +1,201 @@
+import android.os.Debug;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The performance metrics of a CustomView: how long taps take to reach the screen, how long frames
+ * take to draw, kept apart for frames redrawing the whole view and frames redrawing only the cards
+ * that changed, and how much they allocate, how many frames each flip costs, how late turns are
+ * resolved, and how quickly a new game reaches the screen and how often its board was shuffled
+ * ahead of time. A view only records metrics once it has been given a ViewMetrics, and otherwise pays
+ * one null check at each place it would record, so the instrumentation can ship in release builds.
+ * Recording happens on the UI thread. Counters and histograms are updated without locks, so they
+ * can be exported from any thread while the view keeps recording
+ */
+class ViewMetrics {
+
+    private final MetricsHistogram tapToInvalidateNanos = MetricsHistogram.forDurations();
+    private final MetricsHistogram fullDrawNanos = MetricsHistogram.forDurations();
+    private final MetricsHistogram partialDrawNanos = MetricsHistogram.forDurations();
+    private final MetricsHistogram boardLayerRenderNanos = MetricsHistogram.forDurations();
+    private final MetricsHistogram turnResolutionLatenessNanos = MetricsHistogram.forDurations();
+    private final MetricsHistogram framesPerFlip = MetricsHistogram.forCounts();
+    private final MetricsHistogram allocationsPerFrame = MetricsHistogram.forCounts();
+    private final MetricsHistogram resetToFirstFrameNanos = MetricsHistogram.forDurations();
+
+    private final AtomicLong taps = new AtomicLong();
+    private final AtomicLong ignoredTaps = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong flips = new AtomicLong();
+    private final AtomicLong preparedBoardHits = new AtomicLong();
+    private final AtomicLong preparedBoardMisses = new AtomicLong();
+
+    // Only used on the UI thread
+    private long tapNanos;
+    private long frameStartNanos;
+    private int frameStartAllocations;
+    private int framesSinceFlip;
+    private long resetNanos;
+    private boolean isCountingAllocations;
+
+    /**
+     * Start counting the UI thread's allocations, which is only supported by some runtimes. Where
+     * it is not, every frame is counted as allocating nothing
+     */
+    void startCountingAllocations() {
+        isCountingAllocations = true;
+        Debug.startAllocCounting();
+    }
+
+    /**
+     * Stop counting allocations, when the view stops recording into these metrics
+     */
+    void stopCountingAllocations() {
+        if (!isCountingAllocations) return;
+        isCountingAllocations = false;
+        Debug.stopAllocCounting();
+    }
+
+    /**
+     * A tap has arrived. Its latency is measured from the time the touch happened, so it includes
+     * the time spent waiting to be delivered to the view
+     * @param eventTimeMillis
+     * The time of the touch, in the SystemClock.uptimeMillis time base
+     */
+    void onTap(long eventTimeMillis) {
+        taps.incrementAndGet();
+        tapNanos = System.nanoTime() - (SystemClock.uptimeMillis() - eventTimeMillis) * 1000000;
+    }
+
+    /**
+     * The last tap did not change the board, for example because it missed the grid or the move
+     * was not allowed
+     */
+    void onTapIgnored() {
+        ignoredTaps.incrementAndGet();
+        tapNanos = 0;
+    }
+
+    /**
+     * Part of the view has been invalidated. The first invalidation after a tap ends the tap's
+     * latency
+     */
+    void onInvalidate() {
+        if (tapNanos == 0) return;
+        tapToInvalidateNanos.record(System.nanoTime() - tapNanos);
+        tapNanos = 0;
+    }
+
+    /**
+     * A card has been turned up. The number of frames drawn since the card before it is counted
+     */
+    void onCardFlipped() {
+        if (flips.getAndIncrement() > 0) framesPerFlip.record(framesSinceFlip);
+        framesSinceFlip = 0;
+    }
+
+    /**
+     * A turn has been resolved
+     * @param latenessNanos
+     * How long after the end of the reveal delay the turn was resolved
+     */
+    void onTurnResolved(long latenessNanos) {
+        turnResolutionLatenessNanos.record(Math.max(latenessNanos, 0));
+    }
+
+    /**
+     * A new game is being started. The time until the end of the next frame is measured, and
+     * whether its board had been shuffled ahead of time is counted, so the hit rate of the
+     * BoardPreparer is hits / (hits + misses)
+     * @param isPreparedBoard
+     * True if the board had been shuffled ahead of time, false if it was shuffled on the UI thread
+     */
+    void onGameReset(boolean isPreparedBoard) {
+        resetNanos = System.nanoTime();
+        if (isPreparedBoard) preparedBoardHits.incrementAndGet();
+        else preparedBoardMisses.incrementAndGet();
+    }
+
+    /**
+     * A frame has started drawing
+     */
+    void onFrameStart() {
+        frameStartNanos = System.nanoTime();
+        if (isCountingAllocations) frameStartAllocations = Debug.getThreadAllocCount();
+    }
+
+    /**
+     * The frame started by onFrameStart has finished drawing
+     * @param isFullRedraw
+     * True if the whole view was invalidated for this frame, false if only the areas of some cards
+     * were
+     */
+    void onFrameEnd(boolean isFullRedraw) {
+        long durationNanos = System.nanoTime() - frameStartNanos;
+        if (isFullRedraw) fullDrawNanos.record(durationNanos);
+        else partialDrawNanos.record(durationNanos);
+        if (isCountingAllocations) allocationsPerFrame.record(Debug.getThreadAllocCount() - frameStartAllocations);
+        frames.incrementAndGet();
+        framesSinceFlip++;
+        if (resetNanos != 0) {
+            resetToFirstFrameNanos.record(System.nanoTime() - resetNanos);
+            resetNanos = 0;
+        }
+    }
+
+    /**
+     * The board layer has been rendered again
+     * @param durationNanos
+     * How long rendering took
+     */
+    void onBoardLayerRendered(long durationNanos) {
+        boardLayerRenderNanos.record(durationNanos);
+    }
+
+    /**
+     * Export every counter and histogram, then reset them if asked to, so the next export only
+     * covers what happened after this one
+     * @param exporter
+     * Where to export the metrics
+     * @param isReset
+     * True to reset the metrics once they have been exported, false to keep counting
+     * @throws IOException
+     * If the exporter cannot write the metrics
+     */
+    void export(MetricsExporter exporter, boolean isReset) throws IOException {
+        exporter.exportCounter("taps", taps.get());
+        exporter.exportCounter("taps.ignored", ignoredTaps.get());
+        exporter.exportCounter("frames", frames.get());
+        exporter.exportCounter("flips", flips.get());
+        exporter.exportCounter("board.prepared.hits", preparedBoardHits.get());
+        exporter.exportCounter("board.prepared.misses", preparedBoardMisses.get());
+        exporter.exportHistogram("tap.toInvalidate", tapToInvalidateNanos);
+        exporter.exportHistogram("frame.draw.full", fullDrawNanos);
+        exporter.exportHistogram("frame.draw.partial", partialDrawNanos);
+        exporter.exportHistogram("frame.allocations", allocationsPerFrame);
+        exporter.exportHistogram("boardLayer.render", boardLayerRenderNanos);
+        exporter.exportHistogram("flip.frames", framesPerFlip);
+        exporter.exportHistogram("turn.resolutionLateness", turnResolutionLatenessNanos);
+        exporter.exportHistogram("reset.toFirstFrame", resetToFirstFrameNanos);
+        exporter.flush();
+
+        if (isReset) {
+            taps.set(0);
+            ignoredTaps.set(0);
+            frames.set(0);
+            flips.set(0);
+            preparedBoardHits.set(0);
+            preparedBoardMisses.set(0);
+            tapToInvalidateNanos.reset();
+            fullDrawNanos.reset();
+            partialDrawNanos.reset();
+            allocationsPerFrame.reset();
+            boardLayerRenderNanos.reset();
+            framesPerFlip.reset();
+            turnResolutionLatenessNanos.reset();
+            resetToFirstFrameNanos.reset();
+        }
+    }
+}
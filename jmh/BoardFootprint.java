@@ -0,0 +1,80 @@
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures how much heap a GameBoard holds per card, at the board sizes the benchmarks use. Many
+ * boards of a size are built and kept, and the growth of the heap after a garbage collection is
+ * divided by the number of cards on them, so everything a board keeps is counted: the board
+ * itself, its colour array and bitsets, and any view it holds. The Random shared by the boards is
+ * not. Run from the command line, with gradle boardFootprint. The figures depend on the JVM, on
+ * whether it compresses references, and on how exactly it collects when asked to, so measure on
+ * the runtime the numbers are wanted for
+ */
+class BoardFootprint {
+
+    /**
+     * The sides of the square boards measured
+     */
+    private static final int[] SIZES = {4, 32, 64};
+
+    /**
+     * Roughly how many cards are built for each size, enough for the board headers and the
+     * rounding of the arrays to show in the average while small next to the heap
+     */
+    private static final int CARDS_PER_SIZE = 1 << 22;
+
+    /**
+     * Keeps the boards reachable until the heap has been measured
+     */
+    private static GameBoard[] boards;
+
+    /**
+     * Measures each size and prints the heap held per card and per board
+     * @param args
+     * Ignored
+     */
+    public static void main(String[] args) {
+        System.out.println("# Board heap footprint, " + System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+        for (int size : SIZES) {
+            int cardCount = size * size;
+            int boardCount = CARDS_PER_SIZE / cardCount;
+            long bytes = measure(size, boardCount);
+            System.out.println(String.format(Locale.ROOT, "%2dx%-2d %8.2f bytes per card %10.1f bytes per board",
+                    size, size, (double) bytes / ((long) boardCount * cardCount), (double) bytes / boardCount));
+        }
+    }
+
+    /**
+     * Build boards of one size and measure the heap they hold
+     * @param size
+     * The number of columns and rows of each board
+     * @param boardCount
+     * The number of boards to build
+     * @return
+     * The number of bytes the heap grew by
+     */
+    private static long measure(int size, int boardCount) {
+        Random random = new Random(1);
+        boards = new GameBoard[boardCount];
+        long before = usedHeap();
+        for (int i = 0; i < boardCount; i++) {
+            boards[i] = new GameBoard(size, size, random);
+        }
+        long after = usedHeap();
+        boards = null;
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // A single request may not collect everything, so collect until the heap stops shrinking
+        for (int i = 0; i < 8; i++) {
+            System.gc();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) break;
+            used = now;
+        }
+        return used;
+    }
+}
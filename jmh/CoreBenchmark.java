@@ -0,0 +1,567 @@
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+
+/**
+ * The cases of the JMH benchmarks of the Android-free game core, which are in the benchmarks
+ * package. JMH only runs benchmarks in a named package, and the core is package-private in this
+ * one, so each case is written here and the JMH state running it finds it by name with find.
+ * Each case performs its operation a number of times over inputs built when the cases are created.
+ * The cases of work done in every frame - hit-testing and playing the taps drained at the start
+ * of a frame, and visiting the cards onDraw draws - are marked allocation free, as an allocation
+ * in every frame eventually stalls one for a garbage collection, and are checked once measured
+ */
+class CoreBenchmark {
+
+    /**
+     * Written by the card visitor of the cull cases, so the visits cannot be optimised away
+     */
+    static volatile long sink;
+
+    /**
+     * Runs every task as soon as it is scheduled
+     */
+    private static final TurnController.Scheduler IMMEDIATE_SCHEDULER = new TurnController.Scheduler() {
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            task.run();
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+        }
+    };
+
+    /**
+     * A piece of work to be timed
+     */
+    abstract static class Benchmark implements IntToLongFunction {
+        final String name;
+        final boolean isAllocationFree;
+
+        Benchmark(String name) {
+            this(name, false);
+        }
+
+        /**
+         * Constructor
+         * @param name
+         * The name the benchmark is reported and selected by
+         * @param isAllocationFree
+         * True if the work is done every frame and must not allocate
+         */
+        Benchmark(String name, boolean isAllocationFree) {
+            this.name = name;
+            this.isAllocationFree = isAllocationFree;
+        }
+
+        /**
+         * Perform the operation being measured a number of times
+         * @param operations
+         * The number of times to perform it
+         * @return
+         * A value depending on every operation, so the work cannot be optimised away
+         */
+        abstract long run(int operations);
+
+        @Override
+        public long applyAsLong(int operations) {
+            return run(operations);
+        }
+    }
+
+    /**
+     * Find a case by name, building the inputs of every case
+     * @param name
+     * The name of the case
+     * @return
+     * The case, run by passing it the number of operations to perform
+     * @throws IllegalArgumentException
+     * If there is no case with that name
+     */
+    static Benchmark find(String name) {
+        for (Benchmark benchmark : createBenchmarks()) {
+            if (benchmark.name.equals(name)) return benchmark;
+        }
+        throw new IllegalArgumentException("Unknown benchmark " + name);
+    }
+
+    /**
+     * Check if a case is of work done in every frame, which must not allocate
+     * @param benchmark
+     * The case, as returned by find
+     * @return
+     * True if the case must not allocate
+     */
+    static boolean isAllocationFree(IntToLongFunction benchmark) {
+        return ((Benchmark) benchmark).isAllocationFree;
+    }
+
+    /**
+     * Create every case. Inputs are built here, outside of the timed work
+     * @return
+     * The cases
+     */
+    static List<Benchmark> createBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        final Random random = new Random(1);
+
+        benchmarks.add(new Benchmark("board.construct.4x4") {
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    result += new GameBoard(4, 4, random).getColourIndex(i & 15);
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("board.construct.64x64") {
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    result += new GameBoard(64, 64, random).getColourIndex(i & 4095);
+                }
+                return result;
+            }
+        });
+
+        final GameBoard smallBoard = new GameBoard(4, 4, new Random(2));
+        final GameBoard largeBoard = new GameBoard(64, 64, new Random(3));
+        benchmarks.add(new Benchmark("board.shuffle.4x4") {
+            @Override
+            long run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    smallBoard.reshuffle();
+                }
+                return smallBoard.getColourIndex(0);
+            }
+        });
+        benchmarks.add(new Benchmark("board.shuffle.64x64") {
+            @Override
+            long run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    largeBoard.reshuffle();
+                }
+                return largeBoard.getColourIndex(0);
+            }
+        });
+        // Dealing a board shuffled ahead of time, as a reset does when the BoardPreparer has one ready
+        final int[] preparedColours = new int[64 * 64];
+        GameBoard.shuffleColours(preparedColours, GameBoard.getColourCount(64, 64), new Random(10));
+        benchmarks.add(new Benchmark("board.dealPrepared.64x64") {
+            @Override
+            long run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    largeBoard.reshuffle(preparedColours);
+                }
+                return largeBoard.getColourIndex(0);
+            }
+        });
+
+        // The seeded Fisher-Yates shuffle of colour indices against the shuffle the board used to
+        // make: a Paint for every card in a LinkedList, shuffled with Collections.shuffle, which
+        // copies the list into an array and back, then polled out one card at a time
+        for (final int size : new int[] {4, 16, 64}) {
+            final int colourCount = GameBoard.getColourCount(size, size);
+            final int[] colourIndices = new int[size * size];
+            final Random shuffleRandom = new Random(13);
+            benchmarks.add(new Benchmark("shuffle.fisherYates." + size + "x" + size) {
+                @Override
+                long run(int operations) {
+                    for (int i = 0; i < operations; i++) {
+                        GameBoard.shuffleColours(colourIndices, colourCount, shuffleRandom);
+                    }
+                    return colourIndices[0];
+                }
+            });
+            benchmarks.add(new Benchmark("shuffle.linkedList." + size + "x" + size) {
+                @Override
+                long run(int operations) {
+                    for (int i = 0; i < operations; i++) {
+                        LinkedList<Paint> colours = new LinkedList<>();
+                        for (int card = 0; card < colourIndices.length; card++) {
+                            Paint colour = new Paint(Paint.ANTI_ALIAS_FLAG);
+                            colour.setStyle(Paint.Style.FILL);
+                            colour.setColor((card / 2) % colourCount);
+                            colours.add(colour);
+                        }
+                        Collections.shuffle(colours, shuffleRandom);
+                        for (int card = 0; card < colourIndices.length; card++) {
+                            colourIndices[card] = colours.poll().getColor();
+                        }
+                    }
+                    return colourIndices[0];
+                }
+            });
+        }
+
+        // Starting a new game in place, as the reset button does, against building the game's objects
+        // again, as relaunching the activity for every new game used to. The views a relaunch also
+        // inflated cannot be built off a device, so the time until the next frame is measured there
+        // by ViewMetrics
+        for (final int size : new int[] {4, 64}) {
+            benchmarks.add(new Benchmark("reset.inPlace." + size + "x" + size) {
+                final GameEngine gameEngine = new GameEngine(size, size, new Random(12));
+                final TurnController turnController = new TurnController(gameEngine, IMMEDIATE_SCHEDULER);
+                final MoveJournal moveJournal = new MoveJournal();
+                final TapQueue tapQueue = new TapQueue(32);
+
+                @Override
+                long run(int operations) {
+                    for (int i = 0; i < operations; i++) {
+                        gameEngine.newGame(size, size, i);
+                        moveJournal.startSeeded(size, size, gameEngine.getPlayerCount(), i, 0);
+                        turnController.reset();
+                        tapQueue.clear();
+                    }
+                    return gameEngine.getGameBoard().getColourIndex(0);
+                }
+            });
+            benchmarks.add(new Benchmark("reset.rebuild." + size + "x" + size) {
+                @Override
+                long run(int operations) {
+                    long result = 0;
+                    for (int i = 0; i < operations; i++) {
+                        GameEngine gameEngine = new GameEngine(size, size, new Random(i));
+                        MoveJournal moveJournal = new MoveJournal();
+                        moveJournal.startSeeded(size, size, gameEngine.getPlayerCount(), i, 0);
+                        TurnController turnController = new TurnController(gameEngine, IMMEDIATE_SCHEDULER);
+                        TapQueue tapQueue = new TapQueue(32);
+                        result += gameEngine.getGameBoard().getColourIndex(0) + tapQueue.getDroppedCount()
+                                + turnController.getState().ordinal();
+                    }
+                    return result;
+                }
+            });
+        }
+
+        // Touch points spread over a 1024 pixel board of 64x64 tiles of 16 pixels, some outside it
+        final int[] touchX = new int[4096];
+        final int[] touchY = new int[4096];
+        for (int i = 0; i < touchX.length; i++) {
+            touchX[i] = random.nextInt(1100);
+            touchY[i] = random.nextInt(1100);
+        }
+        // The grid hit-test and the one the board used to have, every card's bounds checked in turn
+        // in a LinkedList, on boards from 4x4 to 64x64 tiles of 16 pixels, the touch points scaled
+        // to each board
+        for (final int size : new int[] {4, 8, 16, 32, 64}) {
+            final GameBoard board = size == 64 ? largeBoard : new GameBoard(size, size, new Random(11));
+            final int[] x = new int[touchX.length];
+            final int[] y = new int[touchY.length];
+            for (int i = 0; i < touchX.length; i++) {
+                x[i] = touchX[i] * size / 64;
+                y[i] = touchY[i] * size / 64;
+            }
+            final LinkedList<Rect> tileBounds = new LinkedList<>();
+            for (int i = 0; i < size * size; i++) {
+                int left = (i % size) * 16;
+                int top = (i / size) * 16;
+                tileBounds.add(new Rect(left, top, left + 16, top + 16));
+            }
+            benchmarks.add(new Benchmark("hitTest.grid." + size + "x" + size, true) {
+                @Override
+                long run(int operations) {
+                    long result = 0;
+                    for (int i = 0; i < operations; i++) {
+                        result += board.getCellAt(x[i & 4095], y[i & 4095], 16);
+                    }
+                    return result;
+                }
+            });
+            benchmarks.add(new Benchmark("hitTest.linkedListScan." + size + "x" + size) {
+                @Override
+                long run(int operations) {
+                    long result = 0;
+                    for (int i = 0; i < operations; i++) {
+                        int touchedX = x[i & 4095];
+                        int touchedY = y[i & 4095];
+                        int cellIndex = 0;
+                        Iterator<Rect> bounds = tileBounds.iterator();
+                        while (bounds.hasNext()) {
+                            if (bounds.next().contains(touchedX, touchedY)) break;
+                            cellIndex++;
+                        }
+                        result += cellIndex;
+                    }
+                    return result;
+                }
+            });
+        }
+
+        // Eight players tapping at once on an 8x8 board of 128 pixel tiles: each batch of eight taps
+        // is queued, then hit-tested and played together through a TurnController, as CustomView
+        // does once a frame. A billion divided by the time per tap is the taps per second handled
+        benchmarks.add(new Benchmark("input.partyTaps.8x8", true) {
+            final GameEngine gameEngine = new GameEngine(8, 8, new Random(9));
+            final TurnController turnController = new TurnController(gameEngine, IMMEDIATE_SCHEDULER);
+            final TapQueue tapQueue = new TapQueue(32);
+            final TapQueue.Listener tapPlayer = new TapQueue.Listener() {
+                @Override
+                public void onTap(int cellIndex, long eventTimeMillis) {
+                    if (cellIndex >= 0) turnController.play(cellIndex);
+                    if (turnController.getState() == TurnController.State.GAME_OVER) {
+                        gameEngine.newGame(8, 8);
+                        turnController.reset();
+                    }
+                }
+            };
+
+            {
+                turnController.setRevealDelay(0);
+                turnController.setInputPolicy(TurnController.InputPolicy.QUEUE);
+            }
+
+            @Override
+            long run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    tapQueue.add(touchX[i & 4095], touchY[i & 4095], i);
+                    if ((i & 7) == 7) tapQueue.drain(gameEngine.getGameBoard(), 128, tapPlayer);
+                }
+                tapQueue.drain(gameEngine.getGameBoard(), 128, tapPlayer);
+                if (tapQueue.getDroppedCount() != 0) throw new IllegalStateException("Taps were dropped");
+                return gameEngine.getPairsRemaining();
+            }
+        });
+
+        final Card[] cards = new Card[largeBoard.getCardCount()];
+        for (int i = 0; i < cards.length; i++) {
+            cards[i] = largeBoard.getCard(i);
+        }
+        benchmarks.add(new Benchmark("card.matches") {
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    if (cards[i & 4095].matches(cards[(i * 7 + 1) & 4095])) result++;
+                }
+                return result;
+            }
+        });
+
+        // Several games, so the JIT cannot hoist the same unchanging answer out of the loop
+        final MatchIndex[] smallHintIndices = new MatchIndex[16];
+        final MatchIndex[] largeHintIndices = new MatchIndex[16];
+        for (int i = 0; i < 16; i++) {
+            smallHintIndices[i] = createHintGame(8, 8, i, MemoryStrategy.factory(1).create()).getMatchIndex();
+            largeHintIndices[i] = createHintGame(64, 64, i, MemoryStrategy.factory(1).create()).getMatchIndex();
+        }
+        benchmarks.add(new Benchmark("hint.index.8x8") {
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    MatchIndex matchIndex = smallHintIndices[i & 15];
+                    int first = matchIndex.findKnownPair(0);
+                    result += first + matchIndex.findKnownPartner(0, first);
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("hint.index.64x64") {
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    MatchIndex matchIndex = largeHintIndices[i & 15];
+                    int first = matchIndex.findKnownPair(0);
+                    result += first + matchIndex.findKnownPartner(0, first);
+                }
+                return result;
+            }
+        });
+
+        // The hint a perfect memory player could give before the index: a scan of every card. A
+        // memory that decays still scans, and forgets nothing when every card was seen this turn
+        benchmarks.add(new Benchmark("hint.memoryScan.64x64") {
+            final PlayerStrategy strategy = MemoryStrategy.factory(0.9).create();
+            final GameBoard hintBoard = createHintGame(64, 64, 0, strategy).getGameBoard();
+            final Random strategyRandom = new Random(6);
+
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    result += strategy.chooseFirstCard(hintBoard, strategyRandom);
+                }
+                return result;
+            }
+        });
+
+        // A 128x128 board of 8 pixel tiles with a third of its cards matched, drawn whole, which only
+        // visits the face up cards, and zoomed in to 48 pixel tiles on a 1080 pixel view, which visits
+        // every visible card. Visiting every card is what a zoomed frame would cost without culling
+        final GameBoard hugeBoard = new GameBoard(128, 128, new Random(8));
+        for (int i = 0; i < hugeBoard.getCardCount(); i += 3) {
+            hugeBoard.setFaceUp(i, true);
+            hugeBoard.setMatched(i, true);
+        }
+        hugeBoard.setFaceUp(128 * 64 + 64, true);
+        final BoardViewport zoomedViewport = new BoardViewport();
+        zoomedViewport.setSize(1080, 1080, 1024, 1024, 6);
+        zoomedViewport.zoom(6, 540, 540);
+        final int zoomedLeft = (int) Math.floor(zoomedViewport.toBoardX(0));
+        final int zoomedTop = (int) Math.floor(zoomedViewport.toBoardY(0));
+        final int zoomedRight = (int) Math.ceil(zoomedViewport.toBoardX(1080));
+        final int zoomedBottom = (int) Math.ceil(zoomedViewport.toBoardY(1080));
+        final GameBoard.CardVisitor cardCounter = new GameBoard.CardVisitor() {
+            @Override
+            public void visitCard(int cellIndex, boolean isFaceUp) {
+                sink += isFaceUp ? cellIndex : 1;
+            }
+        };
+        benchmarks.add(new Benchmark("cull.wholeBoard.128x128", true) {
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    result += hugeBoard.visitCards(0, 0, 1024, 1024, 8, false, cardCounter);
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("cull.zoomed.128x128", true) {
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    result += hugeBoard.visitCards(zoomedLeft, zoomedTop, zoomedRight, zoomedBottom, 8, true, cardCounter);
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Benchmark("cull.none.128x128", true) {
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    result += hugeBoard.visitCards(0, 0, 1024, 1024, 8, true, cardCounter);
+                }
+                return result;
+            }
+        });
+
+        benchmarks.add(new Benchmark("game.full.4x4.perfectVsDecay") {
+            final GameEngine gameEngine = new GameEngine(4, 4, new Random());
+            final PlayerStrategy playerOne = MemoryStrategy.factory(1).create();
+            final PlayerStrategy playerTwo = MemoryStrategy.factory(0.9).create();
+            final Random strategyRandom = new Random(4);
+            long game;
+
+            @Override
+            long run(int operations) {
+                long result = 0;
+                for (int i = 0; i < operations; i++) {
+                    result += playGame(gameEngine, game++, playerOne, playerTwo, strategyRandom);
+                }
+                return result;
+            }
+        });
+
+        final GameEngine codecEngine = new GameEngine(64, 64, new Random(5));
+        final ByteBuffer encoded = ByteBuffer.allocate(GameStateCodec.encodedSize(codecEngine));
+        benchmarks.add(new Benchmark("codec.encode.64x64") {
+            @Override
+            long run(int operations) {
+                for (int i = 0; i < operations; i++) {
+                    encoded.clear();
+                    GameStateCodec.encode(codecEngine, encoded);
+                }
+                return encoded.position();
+            }
+        });
+        benchmarks.add(new Benchmark("codec.decode.64x64") {
+            final GameEngine decodedEngine = new GameEngine(64, 64, new Random());
+
+            @Override
+            long run(int operations) {
+                encoded.clear();
+                GameStateCodec.encode(codecEngine, encoded);
+                for (int i = 0; i < operations; i++) {
+                    encoded.rewind();
+                    GameStateCodec.decode(encoded, decodedEngine);
+                }
+                return decodedEngine.getPairsRemaining();
+            }
+        });
+        return benchmarks;
+    }
+
+    /**
+     * Create a one player game in which the player has seen one card of every colour but one, and
+     * both of the last two cards of that colour. The only pair they know is at the end of the
+     * board, so finding it by scanning the board visits every card
+     * @param seed
+     * The seed of the board's shuffle
+     * @param strategy
+     * A strategy that is also shown every card the player has seen
+     * @return
+     * The game
+     */
+    static GameEngine createHintGame(int columns, int rows, long seed, PlayerStrategy strategy) {
+        GameEngine gameEngine = new GameEngine(columns, rows, new Random(seed));
+        gameEngine.setPlayerCount(1);
+        gameEngine.newGame(columns, rows);
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        strategy.newGame(gameBoard);
+
+        int lastCell = gameBoard.getCardCount() - 1;
+        int pairColour = gameBoard.getColourIndex(lastCell);
+        int partnerCell = lastCell - 1;
+        while (gameBoard.getColourIndex(partnerCell) != pairColour) partnerCell--;
+
+        boolean[] isColourSeen = new boolean[gameBoard.getColourCount()];
+        isColourSeen[pairColour] = true;
+        for (int i = 0; i < gameBoard.getCardCount(); i++) {
+            int colourIndex = gameBoard.getColourIndex(i);
+            if (isColourSeen[colourIndex] && i != partnerCell && i != lastCell) continue;
+            isColourSeen[colourIndex] = true;
+            gameEngine.getMatchIndex().onCardRevealed(0, i);
+            strategy.onCardRevealed(i, colourIndex, 0);
+        }
+        return gameEngine;
+    }
+
+    /**
+     * Play a whole game between two strategies, as SimulationRunner does
+     * @return
+     * The number of turns the game took
+     */
+    static int playGame(GameEngine gameEngine, long seed, PlayerStrategy playerOne, PlayerStrategy playerTwo, Random random) {
+        GameBoard gameBoard = gameEngine.getGameBoard();
+        gameEngine.newGame(gameBoard.getColumns(), gameBoard.getRows(), seed);
+        gameBoard = gameEngine.getGameBoard();
+        playerOne.newGame(gameBoard);
+        playerTwo.newGame(gameBoard);
+
+        int turns = 0;
+        while (!gameEngine.isGameOver()) {
+            PlayerStrategy currentStrategy = gameEngine.getCurrentPlayerIndex() == 0 ? playerOne : playerTwo;
+            int firstCard = currentStrategy.chooseFirstCard(gameBoard, random);
+            gameEngine.flip(firstCard);
+            playerOne.onCardRevealed(firstCard, gameBoard.getColourIndex(firstCard), turns);
+            playerTwo.onCardRevealed(firstCard, gameBoard.getColourIndex(firstCard), turns);
+            int secondCard = currentStrategy.chooseSecondCard(gameBoard, firstCard, random);
+            gameEngine.flip(secondCard);
+            playerOne.onCardRevealed(secondCard, gameBoard.getColourIndex(secondCard), turns);
+            playerTwo.onCardRevealed(secondCard, gameBoard.getColourIndex(secondCard), turns);
+            if (gameBoard.getColourIndex(firstCard) == gameBoard.getColourIndex(secondCard)) {
+                playerOne.onPairMatched(firstCard, secondCard);
+                playerTwo.onPairMatched(firstCard, secondCard);
+            }
+            gameEngine.resolveTurn();
+            turns++;
+        }
+        return turns;
+    }
+}
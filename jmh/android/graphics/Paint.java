@@ -0,0 +1,44 @@
+package android.graphics;
+
+/**
+ * The part of Android's Paint the benchmarks use, so the shuffle the board used to make, which
+ * shuffled a list of Paints, can be measured on a plain JVM
+ */
+public class Paint {
+
+    public static final int ANTI_ALIAS_FLAG = 1;
+
+    public enum Style {
+        FILL,
+        STROKE,
+        FILL_AND_STROKE
+    }
+
+    private final int flags;
+    private Style style = Style.FILL;
+    private int color;
+
+    public Paint(int flags) {
+        this.flags = flags;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public void setStyle(Style style) {
+        this.style = style;
+    }
+
+    public Style getStyle() {
+        return style;
+    }
+
+    public void setColor(int color) {
+        this.color = color;
+    }
+
+    public int getColor() {
+        return color;
+    }
+}
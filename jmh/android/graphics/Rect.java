@@ -0,0 +1,33 @@
+package android.graphics;
+
+/**
+ * The part of Android's Rect the benchmarks use, so the hit-test the board used to make, which
+ * checked every card's Rect in turn, can be measured on a plain JVM. Behaves as Android's does
+ */
+public final class Rect {
+    public int left;
+    public int top;
+    public int right;
+    public int bottom;
+
+    public Rect(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * Check if a point is inside the rectangle, counting its left and top edges but not its right
+     * and bottom edges. An empty rectangle contains no points
+     * @param x
+     * The x coordinate of the point
+     * @param y
+     * The y coordinate of the point
+     * @return
+     * True if the point is inside the rectangle, false otherwise
+     */
+    public boolean contains(int x, int y) {
+        return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+    }
+}
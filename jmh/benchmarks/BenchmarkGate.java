@@ -0,0 +1,143 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs the JMH benchmarks and compares them with a saved run, to catch regressions. With Gradle:
+ * gradle jmh -PjmhArgs="--save core-benchmark-baseline.txt"
+ * gradle jmh
+ * which compares with core-benchmark-baseline.txt unless other arguments are given. Results are
+ * keyed by the name of their CoreBenchmark case. The baseline records the JVM and the number of
+ * processors it was run with, and a run on a different machine is compared but never fails, so a
+ * baseline is only useful on the machine it was recorded on. A benchmark is a regression when even
+ * the fastest time within JMH's 99.9% confidence interval is slower than the tolerance allows
+ */
+public final class BenchmarkGate {
+
+    private static final double REGRESSION_TOLERANCE = 0.25;
+    private static final String HEADER = "# CoreBenchmark results in ns/op, ";
+
+    private BenchmarkGate() {
+    }
+
+    /**
+     * Runs the benchmarks from the command line and prints the time of each
+     * @param args
+     * [--baseline file] to compare each result with a saved run and, if the run was saved on this
+     * machine, exit with status 1 if any is slower than the tolerance, [--tolerance fraction] to
+     * set the tolerance, 0.25 unless given, [--save file] to save this run as a baseline,
+     * [--include regex] to only run the JMH benchmarks whose names match
+     * @throws IOException
+     * If a baseline cannot be read or saved
+     * @throws RunnerException
+     * If JMH cannot run the benchmarks
+     */
+    public static void main(String[] args) throws IOException, RunnerException {
+        String baselineFile = null;
+        String saveFile = null;
+        String include = "benchmarks\\..*";
+        double tolerance = REGRESSION_TOLERANCE;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 == args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+            else if (args[i].equals("--baseline")) baselineFile = args[++i];
+            else if (args[i].equals("--save")) saveFile = args[++i];
+            else if (args[i].equals("--include")) include = args[++i];
+            else if (args[i].equals("--tolerance")) tolerance = Double.parseDouble(args[++i]);
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        boolean isGated = false;
+        if (baselineFile != null) {
+            String baselineMachine = readResults(new File(baselineFile), baseline);
+            isGated = getMachine().equals(baselineMachine);
+            if (!isGated) {
+                System.out.println("Baseline was run on " + baselineMachine + ", not " + getMachine()
+                        + ", so changes are shown but not checked");
+            }
+        }
+
+        Map<String, Double> results = new LinkedHashMap<>();
+        boolean isRegressed = false;
+        StringBuilder report = new StringBuilder();
+        for (RunResult runResult : new Runner(new OptionsBuilder().include(include).build()).run()) {
+            String name = runResult.getParams().getParam("name");
+            Result<?> primary = runResult.getPrimaryResult();
+            double nanosPerOperation = primary.getScore();
+            double error = Double.isNaN(primary.getScoreError()) ? 0 : primary.getScoreError();
+            results.put(name, nanosPerOperation);
+
+            String line = String.format(Locale.ROOT, "%-36s %14.2f +- %10.2f ns/op", name, nanosPerOperation, error);
+            Double baselineNanos = baseline.get(name);
+            if (baselineNanos != null) {
+                double change = nanosPerOperation / baselineNanos - 1;
+                boolean isSlower = isGated && (nanosPerOperation - error) / baselineNanos - 1 > tolerance;
+                isRegressed |= isSlower;
+                line += String.format(Locale.ROOT, " %+7.1f%% vs baseline%s", change * 100, isSlower ? " REGRESSION" : "");
+            }
+            report.append(line).append('\n');
+        }
+        // After JMH's own output, so the comparison is read in one place
+        System.out.print(report);
+
+        if (saveFile != null) writeResults(new File(saveFile), results);
+        if (isRegressed) System.exit(1);
+    }
+
+    /**
+     * Describe the JVM and machine running the benchmarks, as recorded in a baseline
+     */
+    private static String getMachine() {
+        return System.getProperty("java.vm.name") + " " + System.getProperty("java.version") + ", "
+                + Runtime.getRuntime().availableProcessors() + " cpus";
+    }
+
+    /**
+     * Read a saved run into a map of results
+     * @return
+     * The machine the run was saved on, or null if it was not recorded
+     */
+    private static String readResults(File file, Map<String, Double> results) throws IOException {
+        String machine = null;
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith(HEADER)) machine = line.substring(HEADER.length());
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                results.put(fields[0], Double.parseDouble(fields[1]));
+            }
+        } finally {
+            reader.close();
+        }
+        return machine;
+    }
+
+    private static void writeResults(File file, Map<String, Double> results) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(HEADER + getMachine() + "\n");
+            for (Map.Entry<String, Double> result : results.entrySet()) {
+                writer.write(String.format(Locale.ROOT, "%s %.2f%n", result.getKey(), result.getValue()));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
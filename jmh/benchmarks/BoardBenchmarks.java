@@ -0,0 +1,61 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building, shuffling and dealing boards, and starting a new game in place or from scratch
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmarks {
+
+    private static final int OPERATIONS = 16;
+
+    @State(Scope.Thread)
+    public static class Case extends CoreCase {
+        @Param({
+                "board.construct.4x4",
+                "board.construct.64x64",
+                "board.shuffle.4x4",
+                "board.shuffle.64x64",
+                "board.dealPrepared.64x64",
+                "shuffle.fisherYates.4x4",
+                "shuffle.linkedList.4x4",
+                "shuffle.fisherYates.16x16",
+                "shuffle.linkedList.16x16",
+                "shuffle.fisherYates.64x64",
+                "shuffle.linkedList.64x64",
+                "reset.inPlace.4x4",
+                "reset.rebuild.4x4",
+                "reset.inPlace.64x64",
+                "reset.rebuild.64x64"
+        })
+        public String name;
+
+        @Override
+        protected String getName() {
+            return name;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public long run(Case benchmarkCase) {
+        return benchmarkCase.run(OPERATIONS);
+    }
+}
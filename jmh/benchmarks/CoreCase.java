@@ -0,0 +1,68 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Runs one of the CoreBenchmark cases, chosen by name. The core and its cases are package-private
+ * in the default package, which no class in a named package can refer to, so the case is found by
+ * reflection when the state is set up and then called through IntToLongFunction, with nothing
+ * reflective in the measured work.
+ * A case marked allocation free is run again once it has been measured, while the JVM counts the
+ * bytes its thread allocates, and fails the benchmark if there are any
+ */
+public abstract class CoreCase {
+
+    private static final int CHECKED_OPERATIONS = 1 << 16;
+
+    private IntToLongFunction benchmark;
+    private boolean isAllocationFree;
+    private volatile long sink;
+
+    /**
+     * Get the name of the case to run
+     * @return
+     * The name, as given to CoreBenchmark.find
+     */
+    protected abstract String getName();
+
+    @Setup(Level.Trial)
+    public void findCase() throws ReflectiveOperationException {
+        Class<?> cases = Class.forName("CoreBenchmark");
+        Method find = cases.getDeclaredMethod("find", String.class);
+        find.setAccessible(true);
+        benchmark = (IntToLongFunction) find.invoke(null, getName());
+        Method isAllocationFreeMethod = cases.getDeclaredMethod("isAllocationFree", IntToLongFunction.class);
+        isAllocationFreeMethod.setAccessible(true);
+        isAllocationFree = (Boolean) isAllocationFreeMethod.invoke(null, benchmark);
+    }
+
+    /**
+     * Run the case
+     * @param operations
+     * The number of operations to perform, as given to @OperationsPerInvocation
+     * @return
+     * A value depending on every operation, for JMH to consume
+     */
+    long run(int operations) {
+        return benchmark.applyAsLong(operations);
+    }
+
+    @TearDown(Level.Trial)
+    public void checkAllocations() {
+        if (!isAllocationFree) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        sink += benchmark.applyAsLong(CHECKED_OPERATIONS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (allocated > 0) {
+            throw new IllegalStateException(getName() + " allocated " + allocated + " bytes in " + CHECKED_OPERATIONS + " operations");
+        }
+    }
+}
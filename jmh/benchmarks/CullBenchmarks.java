@@ -0,0 +1,49 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Visiting the cards a frame draws, whole and zoomed in, against visiting every card
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CullBenchmarks {
+
+    private static final int OPERATIONS = 16;
+
+    @State(Scope.Thread)
+    public static class Case extends CoreCase {
+        @Param({
+                "cull.wholeBoard.128x128",
+                "cull.zoomed.128x128",
+                "cull.none.128x128"
+        })
+        public String name;
+
+        @Override
+        protected String getName() {
+            return name;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public long run(Case benchmarkCase) {
+        return benchmarkCase.run(OPERATIONS);
+    }
+}
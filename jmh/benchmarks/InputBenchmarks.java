@@ -0,0 +1,58 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit-testing touches, playing the taps of several players at once and matching cards
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputBenchmarks {
+
+    private static final int OPERATIONS = 1024;
+
+    @State(Scope.Thread)
+    public static class Case extends CoreCase {
+        @Param({
+                "hitTest.grid.4x4",
+                "hitTest.linkedListScan.4x4",
+                "hitTest.grid.8x8",
+                "hitTest.linkedListScan.8x8",
+                "hitTest.grid.16x16",
+                "hitTest.linkedListScan.16x16",
+                "hitTest.grid.32x32",
+                "hitTest.linkedListScan.32x32",
+                "hitTest.grid.64x64",
+                "hitTest.linkedListScan.64x64",
+                "input.partyTaps.8x8",
+                "card.matches"
+        })
+        public String name;
+
+        @Override
+        protected String getName() {
+            return name;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public long run(Case benchmarkCase) {
+        return benchmarkCase.run(OPERATIONS);
+    }
+}